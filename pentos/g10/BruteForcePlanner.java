@@ -1,14 +1,87 @@
 package pentos.g10;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import pentos.sim.Building;
 import pentos.sim.Cell;
 import pentos.sim.Land;
 
 public class BruteForcePlanner implements Planner {
+	/*
+	 * Every legal candidate is evaluated. The board is split into stripes of
+	 * rows which are searched in parallel. The candidates only read the land
+	 * and the player, every other state (actions, road plans) is local to the
+	 * task evaluating it.
+	 * Once the player has spent half of its CPU time, the search falls back
+	 * to a serial scan scoring the first maxTries legal candidates only.
+	 */
+	static int stripeRows = 2;
 	static int maxTries = 20;
 
+	/* The CPU time the tournament gives a game */
+	static long cpuBudgetNanos = 300L * 1000 * 1000 * 1000;
+
+	static ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+	/*
+	 * The pool searching for one player, made in Player.init and used on
+	 * every move. Its threads are started by the player's thread (or by one
+	 * another) when the first search needs them, so they join its thread
+	 * group: the simulator counts their CPU time and memory as the player's.
+	 * Idle threads end after a while, also once the game is over.
+	 */
+	static class SearchPool implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		final ForkJoinPool pool;
+		final Set<SearchThread> running = ConcurrentHashMap.newKeySet();
+		/* CPU time of the threads which have ended */
+		final AtomicLong endedNanos = new AtomicLong();
+
+		SearchPool() {
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), this, null, false);
+		}
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			SearchThread thread = new SearchThread(pool, this);
+			running.add(thread);
+			return thread;
+		}
+
+		/* CPU time of all the threads of the pool so far */
+		long cpuNanos() {
+			long total = endedNanos.get();
+			for (SearchThread thread : running) {
+				long nanos = bean.getThreadCpuTime(thread.getId());
+				if (nanos > 0)
+					total += nanos;
+			}
+			return total;
+		}
+	}
+
+	static class SearchThread extends ForkJoinWorkerThread {
+		final SearchPool owner;
+
+		SearchThread(ForkJoinPool pool, SearchPool owner) {
+			super(pool);
+			this.owner = owner;
+		}
+
+		@Override
+		protected void onTermination(Throwable exception) {
+			owner.endedNanos.addAndGet(Math.max(bean.getCurrentThreadCpuTime(), 0));
+			owner.running.remove(this);
+			super.onTermination(exception);
+		}
+	}
+
 	@Override
 	public Action makeAPlan(Player player, Building request, Land land) {
 		if (request.type == Building.Type.RESIDENCE)
@@ -21,114 +94,124 @@ public class BruteForcePlanner implements Planner {
 		}
 	}
 
+	/* Residences are searched from the top left corner */
 	public Action bruteForceResidenceSolution(Player player, Building request, Land land) {
-		int tries = 0;
-		double score = -100.0;
-		Action toTake = new Action();
-		for (int i = 0; i < land.side; i++) {
-			for (int j = 0; j < land.side; j++) {
-				Cell c = new Cell(i, j);
-				Building[] rotations = request.rotations();
-				for (int k = 0; k < rotations.length; k++) {
-					Building b = rotations[k];
-					if (land.buildable(b, c)) {
-						Set<Cell> shiftedCells = ToolBox.shiftCells(b, c);
-						// Set<Cell> roads =
-						// ToolBox.findShortestRoad(shiftedCells, land,
-						// player.roadcells);
-						Action toCheck = new Action(request, c, k);
-						Set<Cell> roads = RoadFinder.findRoad(player, toCheck, land);
-						if (roads == null) {
-							System.out.println("Cannot plan roads. This building will not work.");
-							continue;
-						} else {
-							System.out.println("One solution found");
-							toCheck.setRoadCells(roads);
-//							/* Build parks and ponds */
-//							Set<Cell> parkCells = ParkAndWaterFinder.findPark(player, toCheck, land);
-//							toCheck.setParkCells(parkCells);
-//							Set<Cell> water = ParkAndWaterFinder.findWater(player, toCheck, land);
-//							toCheck.setWaterCells(water);
-
-							/* Validate here */
-							boolean ok = PlanEvaluator.validateMove(toCheck, player, land);
-							if (!ok) {
-								System.out.println("Actin rejected in planner");
-								continue;
-							}
-
-							/* Optimization: Try only limited solutions. */
-							if (tries >= maxTries) {
-								System.out.println("Tried " + tries + " solutions already. Choose the best one.");
-								System.out.println("Optimal solution has score: " + score);
-								return toTake;
-							}
-
-							double thisScore = PlanEvaluator.evaluateLastMinutePlan(player, toCheck, land);
-							if (thisScore > score) {
-								score = thisScore;
-								toTake = toCheck;
-							}
-							tries++;
-						}
-					}
-				}
-			}
-		}
-		System.out.println("Optimal solution has score: " + score);
-		return toTake;
+		return bruteForceSolution(player, request, land, false);
 	}
 
+	/* Factories are searched from the bottom right corner */
 	public Action bruteForceFactorySolution(Player player, Building request, Land land) {
-		int tries = 0;
-		double score = -100.0;
-		Action toTake = new Action();
-		for (int i = land.side - 1; i >= 0; i--) {
-			for (int j = land.side - 1; j >= 0; j--) {
-				Cell c = new Cell(i, j);
-				Building[] rotations = request.rotations();
-				for (int k = 0; k < rotations.length; k++) {
-					Building b = rotations[k];
-					if (land.buildable(b, c)) {
-						Set<Cell> shiftedCells = ToolBox.shiftCells(b, c);
-						// Set<Cell> roads =
-						// ToolBox.findShortestRoad(shiftedCells, land,
-						// player.roadcells);
+		return bruteForceSolution(player, request, land, true);
+	}
+
+	public Action bruteForceSolution(Player player, Building request, Land land, boolean reversed) {
+		StripeSearch search = new StripeSearch(player, request, land, reversed, 0, land.side);
+		/* The player's thread plays the whole game, its CPU time is all but the pool's */
+		long spent = Math.max(bean.getCurrentThreadCpuTime(), 0) + player.searchPool.cpuNanos();
+		Candidate best;
+		if (spent < cpuBudgetNanos / 2)
+			best = player.searchPool.pool.invoke(search);
+		else
+			best = search.searchRows(maxTries);
+		if (best == null) {
+			System.out.println("No solution found.");
+			return new Action();
+		}
+		System.out.println("Optimal solution has score: " + best.score);
+		return best.action;
+	}
+
+	/*
+	 * An evaluated candidate. Ties on the score are broken by the position in
+	 * scan order, so the result is the same as a serial scan keeping the first
+	 * best candidate.
+	 */
+	static class Candidate {
+		final Action action;
+		final double score;
+		final int order;
+
+		Candidate(Action action, double score, int order) {
+			this.action = action;
+			this.score = score;
+			this.order = order;
+		}
+
+		static Candidate better(Candidate a, Candidate b) {
+			if (a == null)
+				return b;
+			if (b == null)
+				return a;
+			if (b.score > a.score || (b.score == a.score && b.order < a.order))
+				return b;
+			return a;
+		}
+	}
+
+	/* Searches the rows [from, to) of the scan order */
+	static class StripeSearch extends RecursiveTask<Candidate> {
+		private static final long serialVersionUID = 1L;
+
+		final Player player;
+		final Building request;
+		final Land land;
+		final boolean reversed;
+		final int from;
+		final int to;
+
+		StripeSearch(Player player, Building request, Land land, boolean reversed, int from, int to) {
+			this.player = player;
+			this.request = request;
+			this.land = land;
+			this.reversed = reversed;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Candidate compute() {
+			if (to - from <= stripeRows)
+				return searchRows(Integer.MAX_VALUE);
+			int mid = (from + to) >>> 1;
+			StripeSearch right = new StripeSearch(player, request, land, reversed, mid, to);
+			right.fork();
+			Candidate best = new StripeSearch(player, request, land, reversed, from, mid).compute();
+			return Candidate.better(best, right.join());
+		}
+
+		/* The best of the first legal candidates, up to tries of them */
+		Candidate searchRows(int tries) {
+			Candidate best = null;
+			Building[] rotations = request.rotations();
+			for (int r = from; r < to; r++) {
+				for (int s = 0; s < land.side; s++) {
+					int i = reversed ? land.side - 1 - r : r;
+					int j = reversed ? land.side - 1 - s : s;
+					Cell c = new Cell(i, j);
+					for (int k = 0; k < rotations.length; k++) {
+						if (!land.buildable(rotations[k], c))
+							continue;
 						Action toCheck = new Action(request, c, k);
 						Set<Cell> roads = RoadFinder.findRoad(player, toCheck, land);
-						if (roads == null) {
-							System.out.println("Cannot plan roads. This building will not work.");
+						if (roads == null)
 							continue;
-						} else {
-							System.out.println("One solution found");
-							toCheck.setRoadCells(roads);
-							/* Validate here */
-							boolean ok = PlanEvaluator.validateMove(toCheck, player, land);
-							if (!ok) {
-								System.out.println("Actin rejected in planner");
-								continue;
-							}
-
-							/* Optimization: Try only limited solutions. */
-							if (tries >= maxTries) {
-								System.out.println("Tried " + tries + " solutions already. Choose the best one.");
-								System.out.println("Optimal solution has score: " + score);
-								return toTake;
-							}
-
-							double thisScore = PlanEvaluator.evaluateLastMinutePlan(player, toCheck, land);
-							if (thisScore > score) {
-								score = thisScore;
-								toTake = toCheck;
-							}
-							tries++;
-						}
-					}
+						toCheck.setRoadCells(roads);
+
+						/* Validate here */
+						if (!PlanEvaluator.validateMove(toCheck, player, land))
+							continue;
+						if (tries-- == 0)
+							return best;
 
+						double thisScore = player.evaluator.evaluateLastMinutePlan(player, toCheck, land);
+						if (thisScore <= -100.0)
+							continue;
+						int order = (r * land.side + s) * rotations.length + k;
+						best = Candidate.better(best, new Candidate(toCheck, thisScore, order));
+					}
 				}
 			}
+			return best;
 		}
-		System.out.println("Optimal solution has score: " + score);
-		return toTake;
 	}
 }
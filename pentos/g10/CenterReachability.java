@@ -0,0 +1,262 @@
+package pentos.g10;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pentos.sim.Building;
+import pentos.sim.Cell;
+import pentos.sim.Land;
+
+public class CenterReachability {
+	/*
+	 * Answers the questions of PlanEvaluator.checkBlockRoads for one state of
+	 * the board: can the center cells still reach the roads if a plan
+	 * occupies some cells. It is built once per board version and shared by
+	 * every plan evaluated on that board, possibly from several threads.
+	 *
+	 * The empty cells are labeled by connected component. Occupying a set of
+	 * cells only matters for the components it touches; if the cells around
+	 * the occupied ones stay connected to each other nearby, the rest of the
+	 * component stays connected too, so the answer only needs the labels.
+	 * Otherwise a search from the center cells stops at the first cell next
+	 * to the roads.
+	 */
+	private static CenterReachability current = null;
+
+	private final Player player;
+	private final Land land;
+	private final int version;
+
+	/* Vacant cells in the center, null if there are none */
+	private final List<Cell> centerCells;
+
+	/* Component of each empty cell (i * side + j), -1 for occupied cells */
+	private final int[] component;
+
+	/* Whether no center cell can reach a road neighbor, computed on first use */
+	private Boolean centersCutOff = null;
+
+	/* Roads from a road cell to the border, computed on first use */
+	private final Map<Cell, Set<Cell>> connections = Collections.synchronizedMap(new HashMap<Cell, Set<Cell>>());
+
+	/* The reachability of the current board, rebuilt when the board changes */
+	public static synchronized CenterReachability of(Player player, Land land) {
+		if (current == null || current.player != player || current.land != land
+				|| current.version != land.version())
+			current = new CenterReachability(player, land);
+		return current;
+	}
+
+	private CenterReachability(Player player, Land land) {
+		this.player = player;
+		this.land = land;
+		this.version = land.version();
+		this.centerCells = findCenterCells(land);
+
+		int side = land.side;
+		component = new int[side * side];
+		java.util.Arrays.fill(component, -1);
+		int label = 0;
+		ArrayDeque<Cell> queue = new ArrayDeque<>();
+		for (int i = 0; i < side; i++) {
+			for (int j = 0; j < side; j++) {
+				if (component[i * side + j] >= 0 || !land.unoccupied(i, j))
+					continue;
+				component[i * side + j] = label;
+				queue.add(new Cell(i, j));
+				while (!queue.isEmpty()) {
+					Cell c = queue.remove();
+					for (Cell n : c.neighbors(side)) {
+						if (component[n.i * side + n.j] < 0 && land.unoccupied(n)) {
+							component[n.i * side + n.j] = label;
+							queue.add(n);
+						}
+					}
+				}
+				label++;
+			}
+		}
+	}
+
+	/* The center cell if vacant, else its vacant neighbors and the vacant quarter centers */
+	private static List<Cell> findCenterCells(Land land) {
+		List<Cell> centerCells = new ArrayList<>();
+		Cell center = new Cell(land.side / 2 - 1, land.side / 2 - 1);
+		if (land.unoccupied(center)) {
+			centerCells.add(center);
+			return centerCells;
+		}
+		Cell[] n = center.neighbors();
+		for (int j = 0; j < n.length; j++) {
+			if (land.unoccupied(n[j]))
+				centerCells.add(n[j]);
+		}
+		Cell[] localCenter = new Cell[] { new Cell(land.side / 4, land.side / 4),
+				new Cell(3 * land.side / 4, land.side / 4), new Cell(land.side / 4, 3 * land.side / 4),
+				new Cell(3 * land.side / 4, 3 * land.side / 4), };
+		for (int j = 0; j < localCenter.length; j++) {
+			if (land.unoccupied(localCenter[j]) && !centerCells.contains(localCenter[j]))
+				centerCells.add(localCenter[j]);
+		}
+		return centerCells.isEmpty() ? null : centerCells;
+	}
+
+	public boolean noVacantCenter() {
+		return centerCells == null;
+	}
+
+	/*
+	 * Whether no center cell can get a road to the existing road neighbors
+	 * (RoadFinder.findRoad of the single cell finds no road)
+	 */
+	public synchronized boolean centersCutOff() {
+		if (centersCutOff == null) {
+			boolean allFailed = true;
+			for (Cell c : centerCells) {
+				Building imagineBuilding = new Building(new Cell[] { new Cell(0, 0) }, Building.Type.RESIDENCE);
+				Action imagineAction = new Action(imagineBuilding, c, 0);
+				Set<Cell> futureRoads = RoadFinder.findRoad(player, imagineAction, land);
+				if (futureRoads != null && futureRoads.size() > 0) {
+					allFailed = false;
+					break;
+				}
+			}
+			centersCutOff = allFailed;
+		}
+		return centersCutOff;
+	}
+
+	/* PlanEvaluator.findConnectionToBorder from a road cell */
+	public Set<Cell> connectionToBorder(Cell roadCell) {
+		synchronized (connections) {
+			if (connections.containsKey(roadCell))
+				return connections.get(roadCell);
+		}
+		Set<Cell> connection = PlanEvaluator.findConnectionToBorder(roadCell, player, land, new HashSet<Cell>());
+		connections.put(roadCell, connection);
+		return connection;
+	}
+
+	/*
+	 * Whether a center cell can reach a vacant cell next to the roads while
+	 * the roads and the building cells are blocked (RoadFinder.findClearPath
+	 * succeeds for one of the center cells)
+	 */
+	public boolean reachesRoads(Set<Cell> roads, Set<Cell> building) {
+		int side = land.side;
+		Set<Cell> blocked = new HashSet<>(building);
+		for (Cell r : roads) {
+			if (land.unoccupied(r))
+				blocked.add(r);
+		}
+
+		List<Cell> undecided = new ArrayList<>();
+		for (Cell c : centerCells) {
+			if (blocked.contains(c) || roads.contains(c))
+				continue;
+			int k = component[c.i * side + c.j];
+			if (staysConnected(blocked, k)) {
+				if (touchesRoads(roads, blocked, k))
+					return true;
+			} else
+				undecided.add(c);
+		}
+		if (undecided.isEmpty())
+			return false;
+
+		/* The component is split, search from the centers for a cell next to the roads */
+		boolean[] visited = new boolean[side * side];
+		ArrayDeque<Cell> queue = new ArrayDeque<>();
+		for (Cell c : undecided) {
+			visited[c.i * side + c.j] = true;
+			queue.add(c);
+		}
+		while (!queue.isEmpty()) {
+			Cell c = queue.remove();
+			for (Cell n : c.neighbors(side)) {
+				if (roads.contains(n))
+					return true;
+			}
+			for (Cell n : c.neighbors(side)) {
+				if (!visited[n.i * side + n.j] && land.unoccupied(n) && !blocked.contains(n)) {
+					visited[n.i * side + n.j] = true;
+					queue.add(n);
+				}
+			}
+		}
+		return false;
+	}
+
+	/* Whether some vacant cell of component k outside the blocked cells is next to a road */
+	private boolean touchesRoads(Set<Cell> roads, Set<Cell> blocked, int k) {
+		int side = land.side;
+		for (Cell r : roads) {
+			if (r.i < 0 || r.j < 0 || r.i >= side || r.j >= side)
+				continue;
+			for (Cell n : r.neighbors(side)) {
+				if (component[n.i * side + n.j] == k && !blocked.contains(n) && !roads.contains(n))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Whether component k is still connected without the blocked cells. Every
+	 * part left is next to a blocked cell, so it is if the vacant cells
+	 * around the blocked ones are connected within a small window.
+	 */
+	private boolean staysConnected(Set<Cell> blocked, int k) {
+		int side = land.side;
+		int minI = side, minJ = side, maxI = -1, maxJ = -1;
+		List<Cell> around = new ArrayList<>();
+		for (Cell b : blocked) {
+			if (component[b.i * side + b.j] != k)
+				continue;
+			minI = Math.min(minI, b.i);
+			minJ = Math.min(minJ, b.j);
+			maxI = Math.max(maxI, b.i);
+			maxJ = Math.max(maxJ, b.j);
+			for (Cell n : b.neighbors(side)) {
+				if (component[n.i * side + n.j] == k && !blocked.contains(n))
+					around.add(n);
+			}
+		}
+		if (around.isEmpty())
+			return true;
+		minI = Math.max(0, minI - 2);
+		minJ = Math.max(0, minJ - 2);
+		maxI = Math.min(side - 1, maxI + 2);
+		maxJ = Math.min(side - 1, maxJ + 2);
+
+		int width = maxJ - minJ + 1;
+		boolean[] visited = new boolean[(maxI - minI + 1) * width];
+		ArrayDeque<Cell> queue = new ArrayDeque<>();
+		Cell first = around.get(0);
+		visited[(first.i - minI) * width + first.j - minJ] = true;
+		queue.add(first);
+		while (!queue.isEmpty()) {
+			Cell c = queue.remove();
+			for (Cell n : c.neighbors(side)) {
+				if (n.i < minI || n.i > maxI || n.j < minJ || n.j > maxJ)
+					continue;
+				int index = (n.i - minI) * width + n.j - minJ;
+				if (!visited[index] && land.unoccupied(n) && !blocked.contains(n)) {
+					visited[index] = true;
+					queue.add(n);
+				}
+			}
+		}
+		for (Cell n : around) {
+			if (!visited[(n.i - minI) * width + n.j - minJ])
+				return false;
+		}
+		return true;
+	}
+}
@@ -83,7 +83,7 @@ public class PackToCornerPlanner implements Planner {
 						 * close it can be packed with the existing cluster.
 						 */
 						// thisScore=calculateScore(residenceStart,occupyThen,availThen,roads);
-						double thisScore = PlanEvaluator.evaluatePlan(player, toCheck, land);
+						double thisScore = player.evaluator.evaluatePlan(player, toCheck, land);
 						if (thisScore > score) {
 							score = thisScore;
 							toTake = toCheck;
@@ -176,7 +176,7 @@ public class PackToCornerPlanner implements Planner {
 						 */
 						// double
 						// thisScore=calculateScore(residenceStart,occupyThen,availThen,roads);
-						double thisScore = PlanEvaluator.evaluatePlan(player, toCheck, land);
+						double thisScore = player.evaluator.evaluatePlan(player, toCheck, land);
 
 						if (thisScore > score) {
 							score = thisScore;
@@ -7,6 +7,8 @@ import java.util.Set;
 import pentos.sim.Building;
 import pentos.sim.Cell;
 import pentos.sim.Land;
+import pentos.sim.ParameterSpace;
+import pentos.sim.Parameters;
 
 public class PlanEvaluator {
 	/*
@@ -16,183 +18,238 @@ public class PlanEvaluator {
 	 * less than roadThreshold road cells, penalty becomes size *
 	 * roadUnderThresholdPrice
 	 */
-	static double buildRoadPenalty = -8.0;
+	double buildRoadPenalty = -8.0;
 	
-	static int roadThreshold = 16;
-	static double roadUnderThresholdPrice = -0.0;
-	static double roadAboveThresholdPrice = -0.0;
+	int roadThreshold = 16;
+	double roadUnderThresholdPrice = -0.0;
+	double roadAboveThresholdPrice = -0.0;
 
 	/*
 	 * The price of a road neighbor is different when there are or are not
 	 * enough road neighbors.
 	 */
-	static int roadNeighborRadius = 10;
-	static int roadNeighborThreshold = 5;
-	static double enoughRoadNeighborsPrice = 0;
-	static double notEnoughRoadNeighborsPrice = -0.0;
+	int roadNeighborRadius = 10;
+	int roadNeighborThreshold = 5;
+	double enoughRoadNeighborsPrice = 0;
+	double notEnoughRoadNeighborsPrice = -0.0;
 
 	/*
 	 * The price of a road neighbor is different when there are or are not
 	 * enough vacant border neighbors.
 	 */
-	static int borderRadius = 10;
-	static int borderThreshold = 3;
-	static double enoughBorderPrice = 0;
-	static double notEnoughBorderPrice = -16.0;
+	int borderRadius = 10;
+	int borderThreshold = 3;
+	double enoughBorderPrice = 0;
+	double notEnoughBorderPrice = -16.0;
 
 	/*
 	 * If the residence is adjacent to park, give a bonus. If the residence
 	 * builds park cells, give a penalty. If the residence occupies park cells,
 	 * give a penalty.
 	 */
-	static double adjacentToParkBonus = 3.0;
-	static double buildParkPrice = -0.5;
-	static double occupyParkNeighborPrice = -0.5;
+	double adjacentToParkBonus = 3.0;
+	double buildParkPrice = -0.5;
+	double occupyParkNeighborPrice = -0.5;
 
 	/*
 	 * If the residence is adjacent to water, give a bonus. If the residence
 	 * builds water cells, give a penalty. If the residence occupies water
 	 * cells, give a penalty.
 	 */
-	static double adjacentToWaterBonus = 3.0;
-	static double buildWaterPrice = -0.5;
-	static double occupyWaterNeighborPrice = -0.5;
+	double adjacentToWaterBonus = 3.0;
+	double buildWaterPrice = -0.5;
+	double occupyWaterNeighborPrice = -0.5;
 
 	/*
 	 * If the building plan occupies cells on the border of the cluster, give a
 	 * bonus.
 	 */
-	static double packedToClusterBonus = 1;
+	double packedToClusterBonus = 1;
 
 	/*
 	 * If the building is far from the border it starts from, give a penalty.
 	 */
-	static double distancePrice = -0.5;
+	double distancePrice = -0.5;
 
 	/*
 	 * If the building will make the map neat with a straight border, give a
 	 * bonus.
 	 */
-	static int neatSquareSize = 3;
-	static double neatBorderBonus = 0.1;
+	int neatSquareSize = 3;
+	double neatBorderBonus = 0.1;
 
 	/*
 	 * If the building blocks an existing road, give a serious penalty.
 	 */
-	static double blockRoadPenalty = -64.0;
+	double blockRoadPenalty = -64.0;
 
 	/*
 	 * If the building leaves unreachable whitespace, give a serious penalty.
 	 */
-	static double breakSpacePenalty = -0.0;
+	double breakSpacePenalty = -0.0;
 	
 	/*
 	 * Penalize whitespace above this building
 	 */
-	static double whiteSpacePenalty=-0.0;
+	double whiteSpacePenalty=-0.0;
 	
+	/*
+	 * The weights above that the evaluation reads, for tuning. Penalties and
+	 * prices stay negative, bonuses positive, all within four times their
+	 * defaults; the prices that default to zero range up to -8.
+	 */
+	public ParameterSpace space() {
+		return new ParameterSpace().add("buildRoadPenalty", buildRoadPenalty, -32, 0)
+				.addInt("roadThreshold", roadThreshold, 1, 64)
+				.add("roadUnderThresholdPrice", roadUnderThresholdPrice, -8, 0)
+				.add("roadAboveThresholdPrice", roadAboveThresholdPrice, -8, 0)
+				.addInt("roadNeighborRadius", roadNeighborRadius, 1, 40)
+				.addInt("roadNeighborThreshold", roadNeighborThreshold, 0, 20)
+				.add("enoughRoadNeighborsPrice", enoughRoadNeighborsPrice, -8, 0)
+				.add("notEnoughRoadNeighborsPrice", notEnoughRoadNeighborsPrice, -8, 0)
+				.addInt("borderThreshold", borderThreshold, 0, 12)
+				.add("enoughBorderPrice", enoughBorderPrice, -8, 0)
+				.add("notEnoughBorderPrice", notEnoughBorderPrice, -64, 0)
+				.add("adjacentToParkBonus", adjacentToParkBonus, 0, 12)
+				.add("buildParkPrice", buildParkPrice, -2, 0)
+				.add("occupyParkNeighborPrice", occupyParkNeighborPrice, -2, 0)
+				.add("adjacentToWaterBonus", adjacentToWaterBonus, 0, 12)
+				.add("buildWaterPrice", buildWaterPrice, -2, 0)
+				.add("occupyWaterNeighborPrice", occupyWaterNeighborPrice, -2, 0)
+				.add("packedToClusterBonus", packedToClusterBonus, 0, 4)
+				.add("distancePrice", distancePrice, -2, 0)
+				.add("blockRoadPenalty", blockRoadPenalty, -256, 0)
+				.add("breakSpacePenalty", breakSpacePenalty, -8, 0)
+				.add("whiteSpacePenalty", whiteSpacePenalty, -8, 0);
+	}
+
+	public void tune(Parameters p) {
+		setBuildRoadPenalty(p.get("buildRoadPenalty"));
+		setRoadThreshold(p.getInt("roadThreshold"));
+		setRoadUnderThresholdPrice(p.get("roadUnderThresholdPrice"));
+		setRoadAboveThresholdPrice(p.get("roadAboveThresholdPrice"));
+		setRoadNeighborRadius(p.getInt("roadNeighborRadius"));
+		setRoadNeighborThreshold(p.getInt("roadNeighborThreshold"));
+		setEnoughRoadNeighborsPrice(p.get("enoughRoadNeighborsPrice"));
+		setNotEnoughRoadNeighborsPrice(p.get("notEnoughRoadNeighborsPrice"));
+		setBorderThreshold(p.getInt("borderThreshold"));
+		setEnoughBorderPrice(p.get("enoughBorderPrice"));
+		setNotEnoughBorderPrice(p.get("notEnoughBorderPrice"));
+		setAdjacentToParkBonus(p.get("adjacentToParkBonus"));
+		setBuildParkPrice(p.get("buildParkPrice"));
+		setOccupyParkNeighborPrice(p.get("occupyParkNeighborPrice"));
+		setAdjacentToWaterBonus(p.get("adjacentToWaterBonus"));
+		setBuildWaterPrice(p.get("buildWaterPrice"));
+		setOccupyWaterNeighborPrice(p.get("occupyWaterNeighborPrice"));
+		setPackedToClusterBonus(p.get("packedToClusterBonus"));
+		setDistancePrice(p.get("distancePrice"));
+		setBlockRoadPenalty(p.get("blockRoadPenalty"));
+		setBreakSpacePenalty(p.get("breakSpacePenalty"));
+		setWhiteSpacePenalty(p.get("whiteSpacePenalty"));
+	}
+
 	/* Setters */
-	public static void setBuildRoadPenalty(double buildRoadPenalty) {
-		PlanEvaluator.buildRoadPenalty = buildRoadPenalty;
+	public void setBuildRoadPenalty(double buildRoadPenalty) {
+		this.buildRoadPenalty = buildRoadPenalty;
 	}
 
-	public static void setRoadThreshold(int roadThreshold) {
-		PlanEvaluator.roadThreshold = roadThreshold;
+	public void setRoadThreshold(int roadThreshold) {
+		this.roadThreshold = roadThreshold;
 	}
 
-	public static void setRoadUnderThresholdPrice(double roadUnderThresholdPrice) {
-		PlanEvaluator.roadUnderThresholdPrice = roadUnderThresholdPrice;
+	public void setRoadUnderThresholdPrice(double roadUnderThresholdPrice) {
+		this.roadUnderThresholdPrice = roadUnderThresholdPrice;
 	}
 
-	public static void setRoadAboveThresholdPrice(double roadAboveThresholdPrice) {
-		PlanEvaluator.roadAboveThresholdPrice = roadAboveThresholdPrice;
+	public void setRoadAboveThresholdPrice(double roadAboveThresholdPrice) {
+		this.roadAboveThresholdPrice = roadAboveThresholdPrice;
 	}
 
-	public static void setRoadNeighborRadius(int roadNeighborRadius) {
-		PlanEvaluator.roadNeighborRadius = roadNeighborRadius;
+	public void setRoadNeighborRadius(int roadNeighborRadius) {
+		this.roadNeighborRadius = roadNeighborRadius;
 	}
 
-	public static void setRoadNeighborThreshold(int roadNeighborThreshold) {
-		PlanEvaluator.roadNeighborThreshold = roadNeighborThreshold;
+	public void setRoadNeighborThreshold(int roadNeighborThreshold) {
+		this.roadNeighborThreshold = roadNeighborThreshold;
 	}
 
-	public static void setEnoughRoadNeighborsPrice(double enoughRoadNeighborsPrice) {
-		PlanEvaluator.enoughRoadNeighborsPrice = enoughRoadNeighborsPrice;
+	public void setEnoughRoadNeighborsPrice(double enoughRoadNeighborsPrice) {
+		this.enoughRoadNeighborsPrice = enoughRoadNeighborsPrice;
 	}
 
-	public static void setNotEnoughRoadNeighborsPrice(double notEnoughRoadNeighborsPrice) {
-		PlanEvaluator.notEnoughRoadNeighborsPrice = notEnoughRoadNeighborsPrice;
+	public void setNotEnoughRoadNeighborsPrice(double notEnoughRoadNeighborsPrice) {
+		this.notEnoughRoadNeighborsPrice = notEnoughRoadNeighborsPrice;
 	}
 
-	public static void setBorderRadius(int borderRadius) {
-		PlanEvaluator.borderRadius = borderRadius;
+	public void setBorderRadius(int borderRadius) {
+		this.borderRadius = borderRadius;
 	}
 
-	public static void setBorderThreshold(int borderThreshold) {
-		PlanEvaluator.borderThreshold = borderThreshold;
+	public void setBorderThreshold(int borderThreshold) {
+		this.borderThreshold = borderThreshold;
 	}
 
-	public static void setEnoughBorderPrice(double enoughBorderPrice) {
-		PlanEvaluator.enoughBorderPrice = enoughBorderPrice;
+	public void setEnoughBorderPrice(double enoughBorderPrice) {
+		this.enoughBorderPrice = enoughBorderPrice;
 	}
 
-	public static void setNotEnoughBorderPrice(double notEnoughBorderPrice) {
-		PlanEvaluator.notEnoughBorderPrice = notEnoughBorderPrice;
+	public void setNotEnoughBorderPrice(double notEnoughBorderPrice) {
+		this.notEnoughBorderPrice = notEnoughBorderPrice;
 	}
 
-	public static void setAdjacentToParkBonus(double adjacentToParkBonus) {
-		PlanEvaluator.adjacentToParkBonus = adjacentToParkBonus;
+	public void setAdjacentToParkBonus(double adjacentToParkBonus) {
+		this.adjacentToParkBonus = adjacentToParkBonus;
 	}
 
-	public static void setBuildParkPrice(double buildParkPrice) {
-		PlanEvaluator.buildParkPrice = buildParkPrice;
+	public void setBuildParkPrice(double buildParkPrice) {
+		this.buildParkPrice = buildParkPrice;
 	}
 
-	public static void setOccupyParkNeighborPrice(double occupyParkNeighborPrice) {
-		PlanEvaluator.occupyParkNeighborPrice = occupyParkNeighborPrice;
+	public void setOccupyParkNeighborPrice(double occupyParkNeighborPrice) {
+		this.occupyParkNeighborPrice = occupyParkNeighborPrice;
 	}
 
-	public static void setAdjacentToWaterBonus(double adjacentToWaterBonus) {
-		PlanEvaluator.adjacentToWaterBonus = adjacentToWaterBonus;
+	public void setAdjacentToWaterBonus(double adjacentToWaterBonus) {
+		this.adjacentToWaterBonus = adjacentToWaterBonus;
 	}
 
-	public static void setBuildWaterPrice(double buildWaterPrice) {
-		PlanEvaluator.buildWaterPrice = buildWaterPrice;
+	public void setBuildWaterPrice(double buildWaterPrice) {
+		this.buildWaterPrice = buildWaterPrice;
 	}
 
-	public static void setOccupyWaterNeighborPrice(double occupyWaterNeighborPrice) {
-		PlanEvaluator.occupyWaterNeighborPrice = occupyWaterNeighborPrice;
+	public void setOccupyWaterNeighborPrice(double occupyWaterNeighborPrice) {
+		this.occupyWaterNeighborPrice = occupyWaterNeighborPrice;
 	}
 
-	public static void setPackedToClusterBonus(double packedToClusterBonus) {
-		PlanEvaluator.packedToClusterBonus = packedToClusterBonus;
+	public void setPackedToClusterBonus(double packedToClusterBonus) {
+		this.packedToClusterBonus = packedToClusterBonus;
 	}
 
-	public static void setDistancePrice(double distancePrice) {
-		PlanEvaluator.distancePrice = distancePrice;
+	public void setDistancePrice(double distancePrice) {
+		this.distancePrice = distancePrice;
 	}
 
-	public static void setNeatSquareSize(int neatSquareSize) {
-		PlanEvaluator.neatSquareSize = neatSquareSize;
+	public void setNeatSquareSize(int neatSquareSize) {
+		this.neatSquareSize = neatSquareSize;
 	}
 
-	public static void setNeatBorderBonus(double neatBorderBonus) {
-		PlanEvaluator.neatBorderBonus = neatBorderBonus;
+	public void setNeatBorderBonus(double neatBorderBonus) {
+		this.neatBorderBonus = neatBorderBonus;
 	}
 
-	public static void setBlockRoadPenalty(double blockRoadPenalty) {
-		PlanEvaluator.blockRoadPenalty = blockRoadPenalty;
+	public void setBlockRoadPenalty(double blockRoadPenalty) {
+		this.blockRoadPenalty = blockRoadPenalty;
 	}
 
-	public static void setBreakSpacePenalty(double breakSpacePenalty) {
-		PlanEvaluator.breakSpacePenalty = breakSpacePenalty;
+	public void setBreakSpacePenalty(double breakSpacePenalty) {
+		this.breakSpacePenalty = breakSpacePenalty;
 	}
 
-	public static void setWhiteSpacePenalty(double whiteSpacePenalty) {
-		PlanEvaluator.whiteSpacePenalty = whiteSpacePenalty;
+	public void setWhiteSpacePenalty(double whiteSpacePenalty) {
+		this.whiteSpacePenalty = whiteSpacePenalty;
 	}
 
-	public static double evaluatePlan(Player player, Action action, Land land) {
+	public double evaluatePlan(Player player, Action action, Land land) {
 		Building b = action.getBuilding();
 		if (b == null) {
 			System.out.println("The plan to evaluate is empty. No building action to evaluate.");
@@ -204,46 +261,27 @@ public class PlanEvaluator {
 		}
 	}
 
-	public static double evaluateFactory(Player player, Action action, Land land) {
+	public double evaluateFactory(Player player, Action action, Land land) {
 		double score = 0;
 		if (action.getBuilding() == null) {
 			System.out.println("Error: Residence has no building!");
 			return -100.0;
 		}
 
-		/* Find all the cells this building plan will occupy */
-		Set<Cell> toOccupy = ToolBox.combineSets(action.getAbsoluteBuildingCells(), action.getRoadCells(),
-				action.getParkCells(), action.getWaterCells());
+		/* Extract the features of the cells this building plan will occupy */
+		int[] features = PlanFeatures.extract(player, action, land);
 
 		/* Road related score calculation */
-		score += calculateRoadScore(toOccupy, player, action, land);
+		score += roadScore(features);
 
 		/* Road neighbors related score */
-		score += calculateRoadNeighborScore(toOccupy, player, action, land);
+		score += roadNeighborScore(features);
 
 		/* Border related score */
-		score += calculateBorderScore(toOccupy, player, action, land);
-
-		/* Park and water related score calculation */
-		// double parkScore = calculateParkScore(toOccupy, player, action,
-		// land);
-		// score += parkScore;
-		// double waterScore = calculateWaterScore(toOccupy, player, action,
-		// land);
-		// score += waterScore;
+		score += borderScore(features);
 
 		/* How packed is the building to the existing cluster */
-		double packedToCluster = compactnessScore(toOccupy, player, action, land);
-		score += packedToCluster;
-
-		// /* The tidiness of the land map */
-		// double tidiness = tidinessScore(toOccupy, land);
-		// score += tidiness;
-		//
-		// /* The distance to the starting border. */
-		// double distancePenalty = distanceScore(toOccupy, player, action,
-		// land);
-		// score += distancePenalty;
+		score += compactnessScore(features);
 
 		/* Check if the building will block a road */
 		boolean blockRoad = checkBlockRoads(action, player, land);
@@ -264,51 +302,37 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double evaluateResidence(Player player, Action action, Land land) {
+	public double evaluateResidence(Player player, Action action, Land land) {
 		double score = 0;
 		if (action.getBuilding() == null) {
 			System.out.println("Error: Residence has no building!");
 			return -100.0;
 		}
 
-		/* Find all the cells this building plan will occupy */
-		Set<Cell> toOccupy = ToolBox.combineSets(action.getAbsoluteBuildingCells(), action.getRoadCells(),
-				action.getParkCells(), action.getWaterCells());
+		/* Extract the features of the cells this building plan will occupy */
+		int[] features = PlanFeatures.extract(player, action, land);
 
 		/* Road related score calculation */
-		score += calculateRoadScore(toOccupy, player, action, land);
+		score += roadScore(features);
 
 		/* Road neighbors related score */
-		score += calculateRoadNeighborScore(toOccupy, player, action, land);
+		score += roadNeighborScore(features);
 
 		/* Border related score */
-		score += calculateBorderScore(toOccupy, player, action, land);
+		score += borderScore(features);
 
-		 /* Park and water related score calculation */
-		 double parkScore = calculateParkScore(toOccupy, player, action,
-		 land);
-		 score += parkScore;
-		 double waterScore = calculateWaterScore(toOccupy, player, action,
-		 land);
-		 score += waterScore;
+		/* Park and water related score calculation */
+		score += parkScore(features);
+		score += waterScore(features);
 
 		/* How packed is the building to the existing cluster */
-		double packedToCluster = compactnessScore(toOccupy, player, action, land);
-		score += packedToCluster;
-		
+		score += compactnessScore(features);
+
 		/* How much whitespace it leaves above it */
-		double whiteSpacePenalty=countWhiteSpace(toOccupy,player,action,land);
-		System.out.println("White space penalty is: "+whiteSpacePenalty);
-		score+=whiteSpacePenalty;
-
-		// /* The tidiness of the land map */
-		// double tidiness = tidinessScore(toOccupy, land);
-		// score += tidiness;
-		//
-		 /* The distance to the starting border. */
-		 double distancePenalty = distanceScore(toOccupy, player, action,land);
-		 System.out.println("The distance penalty for this residence is "+distancePenalty);
-		 score += distancePenalty;
+		score += whiteSpacePenalty * features[PlanFeatures.WHITE_SPACE_ABOVE];
+
+		/* The distance to the starting border. */
+		score += distancePrice * features[PlanFeatures.DISTANCE];
 
 		/* Check if the building will block a road */
 		boolean blockRoad = checkBlockRoads(action, player, land);
@@ -327,7 +351,63 @@ public class PlanEvaluator {
 		}
 		return score;
 	}
-	public static double countWhiteSpace(Set<Cell> toOccupy,Player player,Action action,Land land){
+
+	/*
+	 * The weights applied to a feature vector. Each group of features adds up
+	 * in the same order as the separate score calculations below, so the
+	 * scores are the same to the last bit.
+	 */
+	double roadScore(int[] f) {
+		double score = 0.0;
+		int size = f[PlanFeatures.ROAD_CELLS];
+		if (size > 0) {
+			score += buildRoadPenalty;
+			if (size < roadThreshold)
+				score += roadUnderThresholdPrice * size;
+			else
+				score += roadAboveThresholdPrice;
+		}
+		return score;
+	}
+
+	double roadNeighborScore(int[] f) {
+		double price = f[PlanFeatures.NEARBY_ROAD_NEIGHBORS] <= roadNeighborThreshold ? notEnoughRoadNeighborsPrice
+				: enoughRoadNeighborsPrice;
+		return 0.0 + price * f[PlanFeatures.OCCUPIED_ROAD_NEIGHBORS];
+	}
+
+	double borderScore(int[] f) {
+		double price = f[PlanFeatures.NEARBY_BORDERS] <= borderThreshold ? notEnoughBorderPrice : enoughBorderPrice;
+		return 0.0 + price * f[PlanFeatures.COVERED_BORDERS];
+	}
+
+	double parkScore(int[] f) {
+		double score = 0.0;
+		int occupied = f[PlanFeatures.OCCUPIED_PARK_NEIGHBORS];
+		if (occupied > 0)
+			score += adjacentToParkBonus;
+		if (f[PlanFeatures.PARK_CELLS] > 0)
+			score += buildParkPrice * f[PlanFeatures.PARK_CELLS];
+		score += occupied * occupyParkNeighborPrice;
+		return score;
+	}
+
+	double waterScore(int[] f) {
+		double score = 0.0;
+		int occupied = f[PlanFeatures.OCCUPIED_WATER_NEIGHBORS];
+		if (occupied > 0)
+			score += adjacentToWaterBonus;
+		if (f[PlanFeatures.WATER_CELLS] > 0)
+			score += f[PlanFeatures.WATER_CELLS] * buildWaterPrice;
+		score += occupied * occupyWaterNeighborPrice;
+		return score;
+	}
+
+	double compactnessScore(int[] f) {
+		return packedToClusterBonus * f[PlanFeatures.PACKED_TO_CLUSTER];
+	}
+
+	public double countWhiteSpace(Set<Cell> toOccupy,Player player,Action action,Land land){
 		Set<Cell> total=ToolBox.combineSets(action.getAbsoluteBuildingCells(),action.getRoadCells(),action.getParkCells(),action.getWaterCells());
 		Set<Cell> allNeighbors=ParkAndWaterFinder.findTwoLevelNeighbors(total, land);
 		Cell topLeft=ToolBox.findTopLeft(action.getAbsoluteBuildingCells());
@@ -342,7 +422,7 @@ public class PlanEvaluator {
 		return score;
 	}
 	
-	public static double distanceScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double distanceScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		// calculate how far it's from the corner
 		double score = 0.0;
 		double distance = 0.0;
@@ -357,7 +437,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double calculateRoadScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double calculateRoadScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		double score = 0.0;
 		if (action.getRoadCells() != null) {
 			if (action.getRoadCells().size() > 0) {
@@ -372,7 +452,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double calculateRoadNeighborScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double calculateRoadNeighborScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		double score = 0.0;
 
 		// Find road neighbors in the quarter
@@ -398,7 +478,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double calculateBorderScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double calculateBorderScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		double score = 0.0;
 		// Find road neighbors in the quarter
 		Set<Cell> nearbyBorders = new HashSet<>();
@@ -419,7 +499,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double evaluateLastMinutePlan(Player player, Action action, Land land) {
+	public double evaluateLastMinutePlan(Player player, Action action, Land land) {
 		double score = 0.0;
 		/* Find all the cells this building plan will occupy */
 		Set<Cell> toOccupy = ToolBox.combineSets(action.getAbsoluteBuildingCells(), action.getRoadCells(),
@@ -437,7 +517,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double tidinessScore(Set<Cell> toOccupy, Land land) {
+	public double tidinessScore(Set<Cell> toOccupy, Land land) {
 		int count = 0;
 		for (int i = 0; i < 50; i++) {
 			for (int j = 0; j < 50; j++) {
@@ -450,22 +530,20 @@ public class PlanEvaluator {
 	}
 
 	public static boolean vacantSquare(Cell c, Set<Cell> toOccupy, Land land, int side) {
-		for (int i = 0; i < side; i++) {
-			for (int j = 0; j < side; j++) {
-				Cell toCheck = new Cell(c.i + i, c.j + j);
-				if (!ToolBox.isValid(toCheck))// cell itself has invalid
-												// coordinates
-					return false;
-				if (toOccupy.contains(toCheck))// cell will be occupied
-					return false;
-				if (!land.unoccupied(toCheck))// cell is already occupied
-					return false;
-			}
+		if (side <= 0)
+			return true;
+		// square must be inside the land and already vacant
+		if (!land.isEmptyRect(c.i, c.j, c.i + side - 1, c.j + side - 1))
+			return false;
+		// no cell of the square will be occupied
+		for (Cell o : toOccupy) {
+			if (o.i >= c.i && o.i < c.i + side && o.j >= c.j && o.j < c.j + side)
+				return false;
 		}
 		return true;
 	}
 
-	public static double calculateParkScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double calculateParkScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		double score = 0.0;
 		// if (action.getBuilding().type == Building.Type.FACTORY)
 		// return score;
@@ -484,7 +562,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double calculateWaterScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double calculateWaterScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		double score = 0.0;
 		// if (action.getBuilding().type == Building.Type.FACTORY)
 		// return score;
@@ -504,7 +582,7 @@ public class PlanEvaluator {
 		return score;
 	}
 
-	public static double compactnessScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
+	public double compactnessScore(Set<Cell> toOccupy, Player player, Action action, Land land) {
 		Set<Cell> itself = action.getAbsoluteBuildingCells();
 		Set<Cell> all=ToolBox.combineSets(itself,action.getRoadCells(),action.getParkCells(),action.getWaterCells());
 
@@ -639,14 +717,8 @@ public class PlanEvaluator {
 
 	/* Validate that roads are connected and connected with borders */
 	public static boolean validateRoads(Action action, Land land) {
-		Set<Cell> existingRoads = ToolBox.copyLandRoads(land);
-		if (action.getRoadCells() != null) {
-			for (Cell r : action.getRoadCells()) {
-				existingRoads.add(new Cell(r.i + 1, r.j + 1));
-			}
-		}
-		Cell[] erc = existingRoads.toArray(new Cell[existingRoads.size()]);
-		boolean roadValid = Cell.isConnected(erc, 50 + 2);
+		Set<Cell> roads = action.getRoadCells() != null ? action.getRoadCells() : new HashSet<Cell>();
+		boolean roadValid = land.roadsConnected(roads);
 		if (!roadValid) {
 			System.out.println("The road plan is rejected!");
 			return false;
@@ -655,61 +727,25 @@ public class PlanEvaluator {
 	}
 
 	public static boolean checkBlockRoads(Action action, Player player, Land land) {
-		Set<Cell> centerCells = new HashSet<>();
-		// check if the center is occupied
-		Cell center = new Cell(land.side / 2 - 1, land.side / 2 - 1);
-		if (land.unoccupied(center))
-			centerCells.add(center);
-		else {
-			boolean found = false;
-			Cell[] n = center.neighbors();
-			for (int j = 0; j < n.length; j++) {
-				Cell toCheck = n[j];
-				if (land.unoccupied(toCheck)) {
-					found = true;
-					centerCells.add(toCheck);
-				}
-			}
-			// 4 other cells
-			Cell[] localCenter = new Cell[] { new Cell(land.side / 4, land.side / 4),
-					new Cell(3 * land.side / 4, land.side / 4), new Cell(land.side / 4, 3 * land.side / 4),
-					new Cell(3 * land.side / 4, 3 * land.side / 4), };
-			for (int j = 0; j < localCenter.length; j++) {
-				Cell toCheck = localCenter[j];
-				if (land.unoccupied(toCheck)) {
-					found = true;
-					centerCells.add(toCheck);
-				}
-			}
-			if (found == false) {
-				System.out.println("No vacant cells in the center. Forget it.");
-				return false;
-			}
+		/* The center cells, their connection to the roads and the components of the board are shared by all plans of a turn */
+		CenterReachability centers = CenterReachability.of(player, land);
+		if (centers.noVacantCenter()) {
+			System.out.println("No vacant cells in the center. Forget it.");
+			return false;
 		}
 
 		// Find the closest road to the building
 		Set<Cell> cells = action.getAbsoluteBuildingCells();
 
-		/* Debug */
-		Set<Cell> canary = new HashSet<>();
-		canary.add(new Cell(24, 10));
-		canary.add(new Cell(10, 24));
-		for (Cell a : canary) {
-			if (cells.contains(a))
-				System.out.println("Alert! One important cell is to be occupied!");
-		}
-
 		Set<Cell> roadPlan = action.getRoadCells();
 		Set<Cell> roadClues = new HashSet<>();
 		if (roadPlan.size() == 0) {
-			System.out.println("No roads in plan. Search the neighbors of this building.");
 			Set<Cell> buildingNeighbors = ToolBox.allNeighbors(cells);
 			for (Cell c : buildingNeighbors) {
 				if (player.roadcells.contains(c)) {
 					roadClues.add(c);
 				}
 			}
-			System.out.println("Found " + roadClues.size() + " road cells around the building.");
 		} else {
 			Set<Cell> roadPlanNeighbors = ToolBox.allNeighbors(roadPlan);
 			for (Cell c : roadPlanNeighbors) {
@@ -717,69 +753,28 @@ public class PlanEvaluator {
 					roadClues.add(c);
 				}
 			}
-			System.out.println("Found " + roadClues.size() + " road cells around the road plan.");
 		}
 
 		/* If the building is adjacent to border */
 		if (roadClues.size() == 0) {
-			System.out.println(
-					"If the action is connected to the border, we need to valid future road connectivity to the center.");
-
 			// Check connection to the center cell from the existing roads
-			boolean allFailed = true;
-			for (Cell c : centerCells) {
-				// if road is already found, no need to keep checking others
-				if (allFailed == false) {
-					continue;
-				}
-				Building imagineBuilding = new Building(new Cell[] { new Cell(0, 0) }, Building.Type.RESIDENCE);
-				Action imagineAction = new Action(imagineBuilding, c, 0);
-				Set<Cell> futureRoads = RoadFinder.findRoad(player, imagineAction, land);
-				if (futureRoads != null && futureRoads.size() > 0) {
-					System.out.println("Center cell i:" + c.i + " j:" + c.j + " can connect to road.");
-					allFailed = false;
-				}
-			}
-			if (allFailed) {
-				System.out.println("All center cells cannot connect to the road! We cannot let the action happen! ");
-				return true;
-			} else {
-				System.out.println("Still hope for vacant roads. ");
-				return false;
-			}
-
+			return centers.centersCutOff();
 		}
 		/* Or the building is connected to roads */
 		else {
 			// //Find the road based on the road cells that we have found
 			Set<Cell> roadCells = new HashSet<>();
 			for (Cell c : roadClues) {
-				Set<Cell> connection = findConnectionToBorder(c, player, land, new HashSet<Cell>());
+				Set<Cell> connection = centers.connectionToBorder(c);
 				if (connection != null)
 					roadCells.addAll(connection);
 			}
-			System.out.println("The road found has " + roadCells.size() + " cells");
 			roadClues.addAll(action.getRoadCells());
 			roadClues.addAll(roadCells);
 
 			// Check connection to the center cell
-			boolean allFailed = true;
-			for (Cell c : centerCells) {
-				boolean connectToCenter = RoadFinder.findClearPath(c, roadClues, player, action, land);
-				if (connectToCenter) {
-					System.out.println("Center cell i:" + c.i + " j:" + c.j + " can connect to road.");
-					allFailed = false;
-				}
-			}
-			if (allFailed) {
-				System.out.println("All center cells cannot connect to the road! We cannot let the action happen! ");
-				return true;
-			} else {
-				System.out.println("Still hope for vacant roads. ");
-				return false;
-			}
+			return !centers.reachesRoads(roadClues, cells);
 		}
-
 	}
 
 	public static Set<Cell> findConnectionToBorder(Cell c, Player player, Land land, Set<Cell> checked) {
@@ -0,0 +1,122 @@
+package pentos.g10;
+
+import java.util.Set;
+
+import pentos.sim.Building;
+import pentos.sim.Cell;
+import pentos.sim.Land;
+
+public class PlanFeatures {
+	/*
+	 * The features of a plan used by PlanEvaluator, extracted in one pass over
+	 * the cells the plan occupies. Each feature is a count, so the vector is a
+	 * plain int array indexed by the constants below.
+	 */
+	public static final int ROAD_CELLS = 0;
+	public static final int PARK_CELLS = 1;
+	public static final int WATER_CELLS = 2;
+	/* Road neighbors and vacant borders near the start point, and how many are occupied */
+	public static final int NEARBY_ROAD_NEIGHBORS = 3;
+	public static final int OCCUPIED_ROAD_NEIGHBORS = 4;
+	public static final int NEARBY_BORDERS = 5;
+	public static final int COVERED_BORDERS = 6;
+	/* Occupied cells that are park or water neighbors */
+	public static final int OCCUPIED_PARK_NEIGHBORS = 7;
+	public static final int OCCUPIED_WATER_NEIGHBORS = 8;
+	/* Occupied neighbors of the cells on the border of the cluster */
+	public static final int PACKED_TO_CLUSTER = 9;
+	/* Cells within distance 2 of the plan, no lower than its top row */
+	public static final int WHITE_SPACE_ABOVE = 10;
+	/* Rows between the building and the border it starts from */
+	public static final int DISTANCE = 11;
+	public static final int COUNT = 12;
+
+	public static int[] extract(Player player, Action action, Land land) {
+		int[] f = new int[COUNT];
+		Set<Cell> building = action.getAbsoluteBuildingCells();
+		Set<Cell> toOccupy = ToolBox.combineSets(building, action.getRoadCells(), action.getParkCells(),
+				action.getWaterCells());
+		f[ROAD_CELLS] = action.getRoadCells() != null ? action.getRoadCells().size() : 0;
+		f[PARK_CELLS] = action.getParkCells() != null ? action.getParkCells().size() : 0;
+		f[WATER_CELLS] = action.getWaterCells() != null ? action.getWaterCells().size() : 0;
+
+		Cell start = action.getStartPoint();
+		int radius = player.evaluator.roadNeighborRadius;
+		f[NEARBY_ROAD_NEIGHBORS] = countNearby(player.roadNeighbors, start, radius);
+		f[NEARBY_BORDERS] = countNearby(player.vacantBorders, start, radius);
+
+		/* Rows the building spans */
+		int top = Integer.MAX_VALUE;
+		int bottom = 0;
+		for (Cell c : building) {
+			top = Math.min(top, c.i);
+			bottom = Math.max(bottom, c.i);
+		}
+
+		boolean residence = action.getBuilding().type == Building.Type.RESIDENCE;
+		Set<Cell> clusterBorder = residence ? player.residenceStart : player.factoryStart;
+		int side = Cell.default_land_side;
+		boolean[] nearPlan = new boolean[side * side];
+		for (Cell c : toOccupy) {
+			boolean nearby = ToolBox.geoDistance(start, c) < radius;
+			if (nearby && player.roadNeighbors.contains(c))
+				f[OCCUPIED_ROAD_NEIGHBORS]++;
+			if (nearby && player.vacantBorders.contains(c))
+				f[COVERED_BORDERS]++;
+			if (player.parkNeighbors.contains(c))
+				f[OCCUPIED_PARK_NEIGHBORS]++;
+			if (player.waterNeighbors.contains(c))
+				f[OCCUPIED_WATER_NEIGHBORS]++;
+			if (clusterBorder.contains(c)) {
+				for (Cell n : c.neighbors()) {
+					if (!land.unoccupied(n))
+						f[PACKED_TO_CLUSTER]++;
+				}
+			}
+			/* Mark the cells within distance 2 (on the land) */
+			for (int di = -2; di <= 2; di++) {
+				int i = c.i + di;
+				if (i < 0 || i >= side)
+					continue;
+				int reach = 2 - Math.abs(di);
+				for (int j = Math.max(0, c.j - reach); j <= Math.min(side - 1, c.j + reach); j++)
+					nearPlan[i * side + j] = true;
+			}
+		}
+		for (Cell c : toOccupy)
+			nearPlan[c.i * side + c.j] = false;
+		for (int i = 0; i <= top && i < side; i++) {
+			for (int j = 0; j < side; j++) {
+				if (nearPlan[i * side + j])
+					f[WHITE_SPACE_ABOVE]++;
+			}
+		}
+
+		if (residence)
+			f[DISTANCE] = ToolBox.calculateVerticalDistance(start, 0);
+		else
+			f[DISTANCE] = Math.abs(Math.min(bottom, Player.staticLandSize - 1) - land.side);
+		return f;
+	}
+
+	/* Number of cells in the set closer than the radius to the start point */
+	private static int countNearby(Set<Cell> cells, Cell start, int radius) {
+		int count = 0;
+		/* Walk whichever is smaller, the set or the diamond around the start point */
+		if (cells.size() <= 2 * radius * radius) {
+			for (Cell n : cells) {
+				if (ToolBox.geoDistance(start, n) < radius)
+					count++;
+			}
+		} else {
+			for (int i = Math.max(0, start.i - radius + 1); i <= start.i + radius - 1; i++) {
+				int reach = radius - 1 - Math.abs(i - start.i);
+				for (int j = Math.max(0, start.j - reach); j <= start.j + reach; j++) {
+					if (cells.contains(new Cell(i, j)))
+						count++;
+				}
+			}
+		}
+		return count;
+	}
+}
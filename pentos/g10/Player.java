@@ -4,6 +4,9 @@ import pentos.sim.Building;
 import pentos.sim.Cell;
 import pentos.sim.Land;
 import pentos.sim.Move;
+import pentos.sim.ParameterSpace;
+import pentos.sim.Parameters;
+import pentos.sim.Tunable;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -11,7 +14,7 @@ import java.io.PrintWriter;
 import java.lang.reflect.Field;
 import java.util.*;
 
-public class Player extends pentos.g0.Player {
+public class Player extends pentos.g0.Player implements Tunable {
 
 	/* Keep the land's size */
 	public int landSize = 0;
@@ -46,6 +49,12 @@ public class Player extends pentos.g0.Player {
 	public Planner packToCornerPlanner = new PackToCornerPlanner();
 	public Planner bruteForcePlanner = new BruteForcePlanner();
 	public Planner dispatchingPlanner=new DispatchingPlanner();
+
+	/* The threads of the brute force searches, started once per game */
+	public BruteForcePlanner.SearchPool searchPool;
+
+	/* The weights the planners evaluate plans with, tuned for this game only */
+	public PlanEvaluator evaluator = new PlanEvaluator();
 	
 	public int[] factoryRows;
 	
@@ -54,7 +63,18 @@ public class Player extends pentos.g0.Player {
 
 	@Override
 	public void init() { 
-//		 System.out.println("Do not really do things in init()");
+		searchPool = new BruteForcePlanner.SearchPool();
+	}
+
+	/* The weights of the evaluator of this player */
+	@Override
+	public ParameterSpace space() {
+		return evaluator.space();
+	}
+
+	@Override
+	public void tune(Parameters parameters) {
+		evaluator.tune(parameters);
 	}
 
 	public void learnLand(Land land) {
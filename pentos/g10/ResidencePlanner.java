@@ -84,7 +84,7 @@ public class ResidencePlanner implements Planner{
 						 */
 						// double
 						// thisScore=calculateScore(residenceStart,occupyThen,availThen,roads);
-						double thisScore = PlanEvaluator.evaluatePlan(player, toCheck, land);
+						double thisScore = player.evaluator.evaluatePlan(player, toCheck, land);
 
 						if (thisScore > score) {
 							score = thisScore;
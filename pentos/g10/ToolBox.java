@@ -1,6 +1,5 @@
 package pentos.g10;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -17,46 +16,18 @@ public class ToolBox {
 	public static double calculateDistance(Cell a,Cell b){
 		return Math.abs(a.i-b.i)+Math.abs(a.j-b.j);
 	}
-	// Use reflection to get the bloody private field
-	// throws IllegalArgumentException, IllegalAccessException,
-	// NoSuchFieldException, SecurityException
 	public static Cell.Type getCellType(Cell c) {
-		try {
-			Field f = c.getClass().getDeclaredField("type"); // NoSuchFieldException
-			f.setAccessible(true);
-			Cell.Type iWantThis = (Cell.Type) f.get(c); // IllegalAccessException
-			return iWantThis;
-		} catch (Exception e) {
-			System.out.println("Cannot get the field anyway. Return a default.");
-			return Cell.Type.FACTORY;
-		}
+		return c.type;
 	}
 
+	/* Read-only view of the land's road network (re-indexed by +1 with borders) */
 	public static Set<Cell> getRoads(Land land) {
-		try {
-			Field f = land.getClass().getDeclaredField("road_network"); // NoSuchFieldException
-			f.setAccessible(true);
-			@SuppressWarnings("unchecked")
-			Set<Cell> iWantThis = (Set<Cell>) f.get(land); // IllegalAccessException
-			return iWantThis;
-		} catch (Exception e) {
-			System.out.println("Cannot get the roads anyway. Return a default.");
-			return new HashSet<Cell>();
-		}
-
+		return land.roadNetwork();
 	}
 
 	public static Set<Cell> copyLandRoads(Land land) {
-		try {
-			// Copy the set of road cells
-			Set<Cell> landRoads = getRoads(land);
-			Set<Cell> copyRoads = new HashSet<>();
-			copyRoads.addAll(landRoads);
-			return copyRoads;
-		} catch (Exception e) {
-			System.out.println("Cannot copy road network");
-			return new HashSet<>();
-		}
+		// Copy the set of road cells
+		return new HashSet<>(land.roadNetwork());
 	}
 
 	public static Set<Cell> setInterception(Set<Cell> large, Set<Cell> small) {
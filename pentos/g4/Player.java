@@ -7,8 +7,11 @@ import pentos.sim.Building;
 import pentos.sim.Cell;
 import pentos.sim.Land;
 import pentos.sim.Move;
+import pentos.sim.ParameterSpace;
+import pentos.sim.Parameters;
+import pentos.sim.Tunable;
 
-public class Player implements pentos.sim.Player {
+public class Player implements pentos.sim.Player, Tunable {
                             
      //                        empty residence factory p/w side  road  firstroad  first_factory      divide100
     private int[] factory_to = {0,   0,       1,      0,   1,    1,         1,       3,                300};
@@ -24,45 +27,35 @@ public class Player implements pentos.sim.Player {
     private boolean stop = false;
     public void init() {
         isDisconnected = new boolean[side][side];
-        //getParameters();
         // for (int tmp :factory_to ) {
         //     System.out.print(tmp);
         //     System.out.print(" ");
         // }
     }
 
-    public void getParameters(){
-        try{
-         FileReader fileReader = new FileReader("/Users/luyang/Documents/eclipse_workspace/parameters");
-         BufferedReader bufferedReader = new BufferedReader(fileReader);
-         String line = null;
-         line = bufferedReader.readLine();
-         String[] arr = line.split(",");
-         for (int i = 0; i < arr.length ;i++ ) {
-             this.factory_to[i] = Integer.parseInt(arr[i]);
-         }
-         line = bufferedReader.readLine();
-         arr = line.split(",");
-         for (int i = 0; i < arr.length ;i++ ) {
-             this.residence_to[i] = Integer.parseInt(arr[i]);
-         }
-         line = bufferedReader.readLine();
-         arr = line.split(",");
-         for (int i = 0; i < arr.length ;i++ ) {
-             this.waterpark_to[i] = Integer.parseInt(arr[i]);
-         }
-         bufferedReader.close();
-        }
-        catch(FileNotFoundException ex) {
-            System.out.println(
-                "Unable to open file");                
-        }
-        catch(IOException ex) {
-            System.out.println(
-                "Error reading file");                  
-            // Or we could just do this: 
-            // ex.printStackTrace();
-        }
+    // the weights read by the scoring below (the other columns are unused)
+    private static final int[] TUNED_FACTORY_TO = {0, 2, 4, 6, 7};
+    private static final int[] TUNED_RESIDENCE_TO = {0, 1, 3, 4, 5, 6, 7};
+    private static final int[] TUNED_WATERPARK_TO = {0, 1, 2, 3};
+
+    public ParameterSpace space() {
+        ParameterSpace space = new ParameterSpace();
+        for (int i : TUNED_FACTORY_TO)
+            space.addInt("factory_to[" + i + "]", factory_to[i], -12, 12);
+        for (int i : TUNED_RESIDENCE_TO)
+            space.addInt("residence_to[" + i + "]", residence_to[i], -12, 12);
+        for (int i : TUNED_WATERPARK_TO)
+            space.addInt("waterpark_to[" + i + "]", waterpark_to[i], -12, 12);
+        return space;
+    }
+
+    public void tune(Parameters parameters) {
+        for (int i : TUNED_FACTORY_TO)
+            factory_to[i] = parameters.getInt("factory_to[" + i + "]");
+        for (int i : TUNED_RESIDENCE_TO)
+            residence_to[i] = parameters.getInt("residence_to[" + i + "]");
+        for (int i : TUNED_WATERPARK_TO)
+            waterpark_to[i] = parameters.getInt("waterpark_to[" + i + "]");
     }
 
     public Move getBestMove(Building request, Land land) {
@@ -5,6 +5,7 @@ import java.util.*;
 import pentos.sim.Land;
 import pentos.sim.Cell;
 import pentos.sim.Building;
+import pentos.sim.TraversalOrder;
 import pentos.g5.Player;
 
 public class LandUtil {
@@ -53,32 +54,32 @@ public class LandUtil {
         Building[] rotations = null;
         // Building r = null;
 
-        List<Pair> allPairs;
+        TraversalOrder order;
 
         if(strategy == Player.Strategy.SPIRAL) {
             int minSide = Math.min(buildingHull[1].i, buildingHull[1].j);
-            allPairs = Looper2D.getSpiral( size.i - minSide, size.j - minSide, dir==Direction.OUTWARDS );
+            order = TraversalOrder.of( TraversalOrder.Strategy.SPIRAL, size.i - minSide, size.j - minSide, dir==Direction.OUTWARDS );
         } else if(strategy == Player.Strategy.CORNERS) {
-            allPairs = Looper2D.getCorner( size.i, size.j, dir==Direction.OUTWARDS );
+            order = TraversalOrder.of( TraversalOrder.Strategy.CORNER, size.i, size.j, dir==Direction.OUTWARDS );
         } else {
-            allPairs = Looper2D.getBlocks( size.i, size.j, dir==Direction.OUTWARDS );
+            order = TraversalOrder.of( TraversalOrder.Strategy.BLOCK, size.i, size.j, dir==Direction.OUTWARDS );
         }
 
-        // for( Pair p : Looper2D.getSpiral( size.i, size.j, dir==Direction.OUTWARDS )) {
-        for(Pair p : allPairs) {
-            rotations = bu.building.rotations();
+        // The order is shared and precomputed; a pair is only made for placements kept
+        rotations = bu.building.rotations();
+        for(int k = 0; k < order.size(); ++k) {
+            Cell c = new Cell(order.i(k), order.j(k));
+            Pair p = null;
             for( int r=0; r < rotations.length; ++r ) {
-                if(!rejects.contains(p) && land.buildable(rotations[r], new Cell(p.i, p.j)) ) {
-                    // int smoothScore = this.smoothness(rotations[r], p);
+                if( land.buildable(rotations[r], c) ) {
+                    if(p == null) {
+                        p = new Pair(c.i, c.j);
+                        if(rejects.contains(p)) {
+                            break;
+                        }
+                    }
                     int smoothScore = this.smoothness(rotations[r], p);
                     smoothnessSpace.consider(smoothScore, new SearchSpace(p, r));
-                    // DEBUG System.out.println("smooth score = " + smoothScore + " for rotation " + r);
-                    // smoothnessWiseLocations.consider(smoothScore, p);
-                    // smoothnessWiseRotations.consider(smoothScore, r);
-                    // roadnessWiseLocations.consider(roadConnectedness, p);
-                    // roadnessWiseRotations.consider(roadConnectedness, r);
-                    // indexWiseLocations.consider( count, p);
-                    // indexWiseRotations.consider( count, r);
                 }
             }
         }
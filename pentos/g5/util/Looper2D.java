@@ -4,6 +4,8 @@ import java.util.Iterator;
 import java.lang.Math;
 import java.util.*;
 
+import pentos.sim.TraversalOrder;
+
 public class Looper2D {
     // public enum Type {SPIRAL, CORNERS};
 
@@ -11,120 +13,26 @@ public class Looper2D {
     // public int size; // Ideally this should m, n
 
     /*
-     * Note: has not actually been tested with m != n so using with such settings
-     * may have unintended consequences...
+     * The orders are precomputed once in pentos.sim.TraversalOrder; these
+     * wrappers box them into pairs for callers that want a list.
      */
     public static List<Pair> getCorner( int m, int n, boolean outwards) {
-        int numLoops = Math.min(m,n) - 1;
-        List<Pair> l = new ArrayList<Pair>();
-        Looper looper;
-        
-        int loop;
-        looper = new Looper(0, numLoops*2+1, 1);
-
-        while (looper.hasNext()) {
-            loop = looper.next();
-
-            if (loop <= numLoops) {
-                int i = loop;
-                int j = 0;
-                for (; j <= loop; j++) {
-                    i = loop - j;
-                    if (outwards) {
-                        l.add(new Pair(numLoops - i, numLoops - j));
-                    } else {
-                        l.add(new Pair(i,j));
-                    }
-                }
-            } 
-            else {
-                int i = numLoops;
-                int j = loop - numLoops;
-                for (; j<= numLoops; j++) {
-                    i = loop - j;
-                    if (outwards) {
-                        l.add(new Pair(numLoops - i, numLoops - j));
-                    } else {
-                        l.add(new Pair(i,j));
-                    }
-                }
-            }
-        }
-        return l;
+        return toPairs( TraversalOrder.of(TraversalOrder.Strategy.CORNER, m, n, outwards) );
     }
 
     public static List<Pair> getSpiral( int m, int n, boolean outwards ) {
-
-        int numLoops = (Math.min(m,n)+1)/2;
-        int loop;
-        int i;
-        int j;
-        List<Pair> l = new ArrayList<Pair>();
-        Looper looper = null;
-
-        if(outwards) {
-            looper = new Looper(numLoops-1, -1, -1);
-        } else {
-            looper = new Looper(0, numLoops, 1);
-        }
-
-        while(looper.hasNext()) {
-            // 0, 1, 2, 3, .... , ceil(m/2)-1
-            loop = looper.next();
-
-            i = (m/2);
-            j = loop;
-            for(; i > loop; --i) {
-                l.add( new Pair(i,j) );
-            }
-            assert (i == loop);
-            assert (j == loop);
-
-            for(; j < (n-1) - loop; ++j) {
-                l.add( new Pair(i,j) );
-            }   // Traverse all in the top row
-
-            for(; i < (m-1) - loop; ++i) {
-                l.add( new Pair(i,j) );
-            }   // Traverse all in the left column
-
-            for(; j > loop; --j) {
-                l.add( new Pair(i,j) );
-            }
-            assert (i == (m-1)-loop);
-            assert (j == loop);
-
-            for(; i > (m/2)-1; --i) {
-                l.add( new Pair(i,j) );
-            }
-        }
-
-        return l;
+        return toPairs( TraversalOrder.of(TraversalOrder.Strategy.SPIRAL, m, n, outwards) );
     }
 
-
     public static List<Pair> getBlocks( int m, int n, boolean outwards ) {
+        return toPairs( TraversalOrder.of(TraversalOrder.Strategy.BLOCK, m, n, outwards) );
+    }
 
-        int i;
-        int j;
-        List<Pair> l = new ArrayList<Pair>();
-        Looper looperI = null;
-        Looper looperJ = null;
-
-        if(outwards) {
-            for(i=0; i<m; ++i) {
-                for(j=0; j<n; ++j) {
-                    l.add( new Pair(i, j) );
-                }
-            }
-        } else {
-            for(i=m-1; i>=0; --i) {
-                for(j=n-1; j>=0; --j) {
-                    l.add( new Pair(i, j) );
-                }
-            }
+    private static List<Pair> toPairs( TraversalOrder order ) {
+        List<Pair> l = new ArrayList<Pair>(order.size());
+        for(int k = 0; k < order.size(); ++k) {
+            l.add( new Pair(order.i(k), order.j(k)) );
         }
-
         return l;
     }
 
@@ -528,55 +528,53 @@ public class Player implements pentos.sim.Player {
 			throw new RuntimeException("Incorrect building type inputted.");
 		}
 
-		int position = row.getCurrentLocation(), roadRow = row.getRoadLocation();
-		while (position >= 0) {
-			if (land.buildable(residence, new Cell(row.getStart() + offSet, position))) {
-				if (roadRow >= 0 && roadRow <= 49) {
-					// Checking if roads haven't been blocked
-					int to = row.getCurrentLocation();
-					if (to + 1 < land.side) {
-						to += 1;
-					}
-					
-					Iterator<Cell> it = residence.iterator();
-					int from;
-					if (roadRow > row.getStart()) {
-						// Road is at the bottom
-						int maxRow = 0;
-						int maxCol = 0;
-						while (it.hasNext()) {
-							Cell c = it.next();
-							if (c.i > maxRow) {
-								maxRow = c.i;
-								maxCol = 0;
-							} else if (c.i == maxRow && c.j > maxCol) {
-								maxCol = c.j;
-							}
-						}
-						from = position + maxCol;
-					} else {
-						// Road is on top
-						int maxCol = 0;
-						while (it.hasNext()) {
-							Cell c = it.next();
-							if (c.i == 0 && c.j > maxCol) {
-								maxCol = c.j;
-							}
+		// First buildable position going left from the current location
+		RowSkyline skyline = row.getSkyline();
+		skyline.sync(land);
+		int position = skyline.fit(residence, offSet, row.getCurrentLocation()), roadRow = row.getRoadLocation();
+		if (position >= 0) {
+			if (roadRow >= 0 && roadRow <= 49) {
+				// Checking if roads haven't been blocked
+				int to = row.getCurrentLocation();
+				if (to + 1 < land.side) {
+					to += 1;
+				}
+				
+				Iterator<Cell> it = residence.iterator();
+				int from;
+				if (roadRow > row.getStart()) {
+					// Road is at the bottom
+					int maxRow = 0;
+					int maxCol = 0;
+					while (it.hasNext()) {
+						Cell c = it.next();
+						if (c.i > maxRow) {
+							maxRow = c.i;
+							maxCol = 0;
+						} else if (c.i == maxRow && c.j > maxCol) {
+							maxCol = c.j;
 						}
-						from = position + maxCol;
 					}
-					
-					for (int j = from; j <= to; ++j) {
-						// If the road is blocked to this place, cannot build in the row
-						if ((!land.unoccupied(roadRow, j)) && land.getCellType(roadRow, j) != Cell.Type.ROAD) {
-							return -1;
+					from = position + maxCol;
+				} else {
+					// Road is on top
+					int maxCol = 0;
+					while (it.hasNext()) {
+						Cell c = it.next();
+						if (c.i == 0 && c.j > maxCol) {
+							maxCol = c.j;
 						}
 					}
+					from = position + maxCol;
 				}
 				
-				return position;
+				// If the road is blocked to this place, cannot build in the row
+				if (skyline.roadBlocked(from, to)) {
+					return -1;
+				}
 			}
-			position--;
+			
+			return position;
 		}
 		
 		return -1;
@@ -18,6 +18,8 @@ public class Row {
 
 	private Set<Building> buildings;
 	
+	private RowSkyline skyline;
+	
 	public Row(int start, int end, int roadLocation) {
 		this.start = start;
 		this.end = end;
@@ -26,6 +28,7 @@ public class Row {
 		this.roadLocation = roadLocation;
 		this.parkLocation = Integer.MAX_VALUE; // Never used
 		this.parkSize = 0;
+		this.skyline = new RowSkyline(start, roadLocation);
 	}
 	
 	public Row(int start, int end,int roadLocation, int parkLocation, int currentLocation) {
@@ -36,6 +39,7 @@ public class Row {
 		this.roadLocation = roadLocation;
 		this.parkLocation = parkLocation;
 		this.parkSize = 0;
+		this.skyline = new RowSkyline(start, roadLocation);
 	}
 	
 	public int size() {
@@ -61,6 +65,11 @@ public class Row {
 	public int getParkLocation() {
 		return parkLocation;
 	}
+	// Cells of the row a residence can take, synced with the land before each use
+	public RowSkyline getSkyline() {
+		return skyline;
+	}
+	
 	public int getParkSize(){
 		return parkSize;
 	}
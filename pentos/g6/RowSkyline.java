@@ -0,0 +1,139 @@
+package pentos.g6;
+
+import java.util.Iterator;
+
+import pentos.sim.Building;
+import pentos.sim.Cell;
+import pentos.sim.Land;
+
+public class RowSkyline {
+	// Cells of a row a residence can take, column by column, kept in step
+	// with the land. free[j] has bit k set if cell (top + k, j) is empty and
+	// not next to a factory, for the first depth rows from the top of the row. A footprint fits at a column when
+	// every one of its columns finds its cells free, so for each column mask
+	// a footprint asks for, the row keeps the closest column to the left that
+	// can host it; a search jumps from one hosting column to the next instead
+	// of testing every position.
+
+	public static final int depth = 8;
+
+	private final int top, roadLocation;
+
+	private Land land = null;
+	private int version = 0;
+
+	private int side;
+	private int[] free;
+	// blockedRoad[j]: road row cells in columns 0..j-1 that are occupied by something else than a road
+	private int[] blockedRoad;
+	// host[mask][j]: rightmost column <= j whose free cells include mask, -1 if none
+	private int[][] host = new int[1 << depth][];
+
+	public RowSkyline(int top, int roadLocation) {
+		this.top = top;
+		this.roadLocation = roadLocation;
+	}
+
+	// Catch up with the cells built since the last call
+	public void sync(Land land) {
+		if (this.land != land || version > land.version()) {
+			this.land = land;
+			side = land.side;
+			free = new int[side];
+			blockedRoad = new int[side + 1];
+			for (int j = 0; j < side; j++)
+				free[j] = column(j);
+		} else {
+			boolean changed = false;
+			for (Cell c : land.changesSince(version)) {
+				// A built cell also changes whether its neighbors can take a residence
+				if (c.i + 1 >= top && c.i - 1 < top + depth) {
+					for (int j = Math.max(0, c.j - 1); j <= Math.min(side - 1, c.j + 1); j++)
+						free[j] = column(j);
+					changed = true;
+				}
+				if (c.i == roadLocation)
+					changed = true;
+			}
+			if (!changed) {
+				version = land.version();
+				return;
+			}
+		}
+		version = land.version();
+		for (int j = 0; j < side; j++)
+			blockedRoad[j + 1] = blockedRoad[j] + (blocksRoad(j) ? 1 : 0);
+		host = new int[1 << depth][];
+	}
+
+	private int column(int j) {
+		int bits = 0;
+		for (int k = 0; k < depth; k++) {
+			int i = top + k;
+			if (land.unoccupied(i, j) && land.countNeighbors(Cell.Type.FACTORY, i, j) == 0)
+				bits |= 1 << k;
+		}
+		return bits;
+	}
+
+	private boolean blocksRoad(int j) {
+		return roadLocation >= 0 && roadLocation < side && !land.unoccupied(roadLocation, j)
+				&& land.getCellType(roadLocation, j) != Cell.Type.ROAD;
+	}
+
+	// Rightmost column at most from where the residence fits offSet rows below
+	// the top of the row (same as the first buildable position scanning
+	// leftwards), -1 if none
+	public int fit(Building residence, int offSet, int from) {
+		int width = 0, height = 0;
+		Iterator<Cell> it = residence.iterator();
+		while (it.hasNext()) {
+			Cell c = it.next();
+			width = Math.max(width, c.j + 1);
+			height = Math.max(height, c.i + 1);
+		}
+		if (offSet < 0 || offSet + height > depth || top < 0)
+			return -1;
+		int[] needs = new int[width];
+		it = residence.iterator();
+		while (it.hasNext()) {
+			Cell c = it.next();
+			needs[c.j] |= 1 << (c.i + offSet);
+		}
+
+		int position = Math.min(from, side - width);
+		int c = 0;
+		while (position >= 0 && c < width) {
+			int hostColumn = hosts(needs[c])[position + c];
+			if (hostColumn == position + c) {
+				c++;
+			} else {
+				position = hostColumn - c;
+				c = 0;
+			}
+		}
+		return position >= 0 ? position : -1;
+	}
+
+	// Whether a road row cell in columns from..to is occupied by something else than a road
+	public boolean roadBlocked(int from, int to) {
+		from = Math.max(from, 0);
+		to = Math.min(to, side - 1);
+		return from <= to && blockedRoad[to + 1] - blockedRoad[from] > 0;
+	}
+
+	private int[] hosts(int mask) {
+		int[] h = host[mask];
+		if (h == null) {
+			h = new int[side];
+			int last = -1;
+			for (int j = 0; j < side; j++) {
+				if ((free[j] & mask) == mask)
+					last = j;
+				h[j] = last;
+			}
+			host[mask] = h;
+		}
+		return h;
+	}
+}
@@ -1,9 +1,13 @@
 package pentos.g8;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Random;
@@ -14,11 +18,20 @@ import pentos.sim.Building.Type;
 import pentos.sim.Land;
 import pentos.sim.Move;
 import pentos.sim.Cell;
+import pentos.sim.ShapeRegistry;
+import pentos.sim.SharedCache;
 
 public class Player implements pentos.sim.Player {
 
 	private Random gen = new Random();
 	private Set<Cell> road_cells = new HashSet<Cell>();
+	// The template moves left in this game, by shape id (see templateKey)
+	private Map<Integer, ArrayDeque<Move>> templates = new HashMap<Integer, ArrayDeque<Move>>();
+
+	// The template key of each factory shape with the cells of a template
+	private Map<Integer, Integer> factoryKeys = new HashMap<Integer, Integer>();
+
+	// Filled by the add methods while the blueprint is built
 	private ArrayList<ArrayList<Move>> optimized = new ArrayList<ArrayList<Move>>();
 	private ArrayList<Building> buildingTypes = new ArrayList<Building>();
 
@@ -31,10 +44,28 @@ public class Player implements pentos.sim.Player {
 	private static final int OPT_BUT = 49;
 	private static final int OPT_RIGHT = 20;
 	private static final int OPT_LEFT = 0;
+	// Moves ranked at a time when looking for one with a road
+	private static final int TOP_K = 16;
 	private boolean pond = true;
 
 	// function is called once at the beginning before play is called
 	public void init() { 
+		// The template moves of every game, built by the first game of the JVM from the addShape methods
+		Map<Integer, Move[]> blueprint = SharedCache.get(Player.class, "blueprint", () -> buildBlueprint());
+		// Moves are changed when they are played, so each game gets its own copies
+		for (Map.Entry<Integer, Move[]> e : blueprint.entrySet()) {
+			ArrayDeque<Move> queue = new ArrayDeque<Move>();
+			for (Move m : e.getValue()) {
+				queue.add(new Move(true, m.request, m.location, m.rotation, m.road, m.water, m.park));
+			}
+			templates.put(e.getKey(), queue);
+			// The moves of a shape all build its template
+			factoryKeys.put(ShapeRegistry.shapeId(withType(e.getValue()[0].request, Type.FACTORY)), e.getKey());
+		}
+	}
+
+	// The hard coded moves of each shape in the order they are used
+	private Map<Integer, Move[]> buildBlueprint() {
 		addParks();
 		addWater();
 		addRoads();
@@ -57,6 +88,46 @@ public class Player implements pentos.sim.Player {
 		addShape16();
 		addShape17();
 		addShape18();
+
+		Map<Integer, Move[]> moves = new HashMap<Integer, Move[]>();
+		for (int i = 0; i < buildingTypes.size(); i++) {
+			Building template = buildingTypes.get(i);
+			int key = ShapeRegistry.shapeId(template);
+			Move[] shape = optimized.get(i).toArray(new Move[0]);
+			Move[] known = moves.get(key);
+			if (known != null) {
+				// Same shape added twice: its moves come after the earlier ones
+				Move[] both = Arrays.copyOf(known, known.length + shape.length);
+				System.arraycopy(shape, 0, both, known.length, shape.length);
+				shape = both;
+			}
+			moves.put(key, shape);
+		}
+		return moves;
+	}
+
+	private static Building withType(Building building, Type type) {
+		Cell[] cells = new Cell[building.size()];
+		int k = 0;
+		for (Cell c : building) {
+			cells[k++] = c;
+		}
+		return new Building(cells, type);
+	}
+
+	/*
+	 * Templates are residences, but Building.equals ignores the type when a
+	 * building is not interned, so a factory with the same cells as a template
+	 * has always matched it: key by the shape id of the residence form, -1 for
+	 * a request matching no template.
+	 */
+	private int templateKey(Building request) {
+		int shape = ShapeRegistry.shapeId(request);
+		if (request.type == Type.RESIDENCE) {
+			return shape;
+		}
+		Integer key = factoryKeys.get(shape);
+		return key == null ? -1 : key;
 	}
 
 	public Move play(Building request, Land land) {
@@ -152,15 +223,14 @@ public class Player implements pentos.sim.Player {
 
 	private Move getNormalMove(List<Move> moves, Land land, Building request, List<Integer> areas) {
 
-		PriorityQueue<int[]> pq = getCompactMoveIndex(moves, land, request);
+		MoveRanking ranking = getCompactMoveIndex(moves, land, request);
 
 		Set<Cell> shiftedCells = new HashSet<Cell>();
 		Set<Cell> roadCells = new HashSet<Cell>();
 
 		Move chosen = new Move(false);
-		while (!pq.isEmpty()) {
-			int[] pair = pq.poll();
-			int index = pair[1];
+		while (!ranking.isEmpty()) {
+			int index = ranking.poll();
 			chosen = moves.get(index);
 			shiftedCells = shiftCells(chosen);
 			roadCells = findShortestRoad(shiftedCells, land);
@@ -205,15 +275,14 @@ public class Player implements pentos.sim.Player {
 
 	private Move getNormalMoveInOpt(List<Move> moves, Land land, Building request, List<Integer> areas) {
 
-		PriorityQueue<int[]> pq = getCompactMoveIndex(moves, land, request);
+		MoveRanking ranking = getCompactMoveIndex(moves, land, request);
 
 		Set<Cell> shiftedCells = new HashSet<Cell>();
 		Set<Cell> roadCells = new HashSet<Cell>();
 
 		Move chosen = new Move(false);
-		while (!pq.isEmpty()) {
-			int[] pair = pq.poll();
-			int index = pair[1];
+		while (!ranking.isEmpty()) {
+			int index = ranking.poll();
 			chosen = moves.get(index);
 			shiftedCells = shiftCells(chosen);
 			roadCells = findShortestRoad(shiftedCells, land);
@@ -290,64 +359,118 @@ public class Player implements pentos.sim.Player {
 		return weight;
 	}
 
-	private PriorityQueue<int[]> getCompactMoveIndex(List<Move> moves, Land land, Building request) {
-		PriorityQueue<int[]> pq = new PriorityQueue<>((a, b) -> a[0] - b[0]);
-
+	private MoveRanking getCompactMoveIndex(List<Move> moves, Land land, Building request) {
+		int[] weights = new int[moves.size()];
 		for (int i = 0 ; i < moves.size() ; ++i) {
 			int index = i;
 			index = request.type == Building.Type.FACTORY ? index : moves.size() - index -1 ;
 			Set<Cell> shiftedCells = shiftCells(moves.get(index));
-			int weight = getWeight(shiftedCells, land, request);
-			int[] pair = {weight, index};
-			pq.offer(pair);
+			weights[i] = getWeight(shiftedCells, land, request);
+		}
+		return new MoveRanking(weights, request.type == Building.Type.FACTORY);
+	}
 
+	/*
+	 * Move indices by increasing weight, ties in the order the weights were
+	 * computed. Usually one of the first moves has a road, so the moves are
+	 * selected TOP_K at first instead of ordering all of them, then twice as
+	 * many each time the batch runs out.
+	 */
+	private static class MoveRanking {
+		// weight in the high bits, position in the low bits
+		private final long[] keys;
+		private final boolean forward;
+		private long[] batch = new long[0];
+		private int next = 0;
+		private int served = 0;
+		private int size = TOP_K;
+
+		MoveRanking(int[] weights, boolean forward) {
+			keys = new long[weights.length];
+			for (int i = 0; i < weights.length; i++) {
+				keys[i] = ((long) weights[i] << 32) | i;
+			}
+			this.forward = forward;
+		}
+
+		boolean isEmpty() {
+			return served == keys.length;
+		}
+
+		int poll() {
+			if (next == batch.length) {
+				select();
+			}
+			served++;
+			int i = (int) batch[next++];
+			return forward ? i : keys.length - i - 1;
+		}
+
+		// The next smallest keys after the last one served, in order
+		private void select() {
+			boolean first = batch.length == 0;
+			long last = first ? 0 : batch[batch.length - 1];
+			if (!first) {
+				size *= 2;
+			}
+			PriorityQueue<Long> top = new PriorityQueue<Long>(size, (a, b) -> Long.compare(b, a));
+			for (long key : keys) {
+				if (first || key > last) {
+					if (top.size() < size) {
+						top.offer(key);
+					} else if (key < top.peek()) {
+						top.poll();
+						top.offer(key);
+					}
+				}
+			}
+			batch = new long[top.size()];
+			for (int k = batch.length - 1; k >= 0; k--) {
+				batch[k] = top.poll();
+			}
+			next = 0;
 		}
-		return pq;
 	}
 
 	private Move getOptMove(Building request, Land land) {
 
-		for (int i = 0; i < optimized.size(); i++) {
-			if (request.equals(buildingTypes.get(i))) {
-				if (!optimized.get(i).isEmpty()) {
-					Move m = optimized.get(i).get(0);
-					optimized.get(i).remove(0);
-					
-					int nextToParkOrWater = nextToWaterOrPark(m, land);
-					
-					if(nextToParkOrWater == 3){
-						m.park = new HashSet<Cell>();
-						m.water = new HashSet<Cell>();
-					}else if(nextToParkOrWater == 2){
-						m.water = new HashSet<Cell>();
-					}else if(nextToParkOrWater == 1){
-						m.park = new HashSet<Cell>();
-					}
-					
-					Building hardCoded = m.request;
-					
-					m.rotation = getCorrectRotation(request, hardCoded, m.rotation);
-					m.request = request;
-
-					if(connectedToRoad(m)){
-						m.road = new HashSet<Cell>();
-					}else{
-						road_cells.addAll(m.road);
-					}
+		ArrayDeque<Move> queue = templates.get(templateKey(request));
+		if (queue != null && !queue.isEmpty()) {
+			Move m = queue.poll();
+			
+			int nextToParkOrWater = nextToWaterOrPark(m, land);
+			
+			if(nextToParkOrWater == 3){
+				m.park = new HashSet<Cell>();
+				m.water = new HashSet<Cell>();
+			}else if(nextToParkOrWater == 2){
+				m.water = new HashSet<Cell>();
+			}else if(nextToParkOrWater == 1){
+				m.park = new HashSet<Cell>();
+			}
+			
+			Building hardCoded = m.request;
+			
+			m.rotation = getCorrectRotation(request, hardCoded, m.rotation);
+			m.request = request;
+
+			if(connectedToRoad(m)){
+				m.road = new HashSet<Cell>();
+			}else{
+				road_cells.addAll(m.road);
+			}
 
-					if(!land.buildable(m.request.rotations()[m.rotation], m.location)){
-						Building[] buildings = m.request.rotations();
-						for(int j = 0; j < buildings.length;j++){
-							if(land.buildable(buildings[j],m.location)){
-								m.rotation = j;
-								return m;
-							}
-						}
-						return null;
+			if(!land.buildable(m.request.rotations()[m.rotation], m.location)){
+				Building[] buildings = m.request.rotations();
+				for(int j = 0; j < buildings.length;j++){
+					if(land.buildable(buildings[j],m.location)){
+						m.rotation = j;
+						return m;
 					}
-					return m;
 				}
+				return null;
 			}
+			return m;
 		}
 
 		return null;
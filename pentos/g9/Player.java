@@ -2,12 +2,17 @@ package pentos.g9;
 
 import pentos.sim.Cell;
 import pentos.sim.Building;
+import pentos.sim.CandidateCache;
 import pentos.sim.Land;
 import pentos.sim.Move;
+import pentos.sim.ParameterSpace;
+import pentos.sim.Parameters;
+import pentos.sim.ShapeRegistry;
+import pentos.sim.Tunable;
 
 import java.util.*;
 
-public class Player implements pentos.sim.Player {
+public class Player implements pentos.sim.Player, Tunable {
 
     private int BASE_BUILDING_SCORE = 10; // base score for a single cell of a building
     private int PACKING_FACTOR_MULTIPLE = 10; // score multiple for each adjacent cell
@@ -26,11 +31,27 @@ public class Player implements pentos.sim.Player {
     // used for scoring factories only
     private int POND_PENALTY = 5; // penalty for adjacent ponds/parks
     private int FACTORY_BONUS = 5; // bonus for adjacent factory cells
+
+    // used for caching scored moves across turns
+    private int CANDIDATE_CACHE_SIZE = 50000; // max # of (request, rotation, location) entries kept
+    private int LOCAL_RADIUS = 10; // distance from the building of every cell read when scoring (except roads and cut off groups)
+    private static final int MAX_PARK_POND_SIZE = 4; // # of cells of every park or pond built by buildParksPonds
     
     private Set<Cell> road_cells;
     private Random gen = new Random();
     private int resHighestI = 0;
 
+    // scored moves of each request orientation, rotation and location, dropped
+    // when a cell they depend on is built
+    private CandidateCache<List<ScoredMove>> candidateCache =
+        new CandidateCache<List<ScoredMove>>(CANDIDATE_CACHE_SIZE);
+    // bounding box {min i, min j, max i, max j} of the cut off groups seen by countCellsCutOff
+    private int[] cutOffBounds = null;
+    // distance of empty cells to the perimeter or a road, labeled each turn
+    private int[][] roadDistance;
+    // set once road_cells holds roads that were never built
+    private boolean roadCellsNotBuilt = false;
+
     /* (Move, score) tuple
      */
     class ScoredMove implements Comparable<ScoredMove> {
@@ -71,10 +92,62 @@ public class Player implements pentos.sim.Player {
         }
     }
     
+    /* A buildable rotation at a location, with an upper bound on the score
+       of its moves. Its moves are only scored if the bound can still beat
+       the best move found so far
+     */
+    class BoundedCandidate {
+        public Cell position;
+        public int rotation;
+        public int bound;
+        public List<ScoredMove> moves = null; // null until scored
+
+        public BoundedCandidate(Cell position, int rotation, int bound) {
+            this.position = position;
+            this.rotation = rotation;
+            this.bound = bound;
+        }
+    }
+    
     public void init() {
         road_cells = new HashSet<Cell>();
     }
 
+    /* The scoring constants, each between zero and four times its default
+     */
+    public ParameterSpace space() {
+        return new ParameterSpace()
+            .addInt("BASE_BUILDING_SCORE", BASE_BUILDING_SCORE, 0, 40)
+            .addInt("PACKING_FACTOR_MULTIPLE", PACKING_FACTOR_MULTIPLE, 0, 40)
+            .addInt("POND_BONUS_SCORE", POND_BONUS_SCORE, 0, 80)
+            .addInt("FIELD_BONUS_SCORE", FIELD_BONUS_SCORE, 0, 80)
+            .addInt("BUILD_ROAD_PENALTY", BUILD_ROAD_PENALTY, 0, 20)
+            .addInt("BUILD_PARK_PENALTY", BUILD_PARK_PENALTY, 0, 20)
+            .addInt("ROAD_ADJ_PENALTY", ROAD_ADJ_PENALTY, 0, 8)
+            .addInt("PERIMETER_PENALTY", PERIMETER_PENALTY, 0, 20)
+            .addInt("MIN_POTENTIAL_MOVES", MIN_POTENTIAL_MOVES, 1, 80)
+            .addInt("ROAD_ADJ_POND_PENALTY", ROAD_ADJ_POND_PENALTY, 0, 20)
+            .addInt("PARKPOND_PACKING_BONUS", PARKPOND_PACKING_BONUS, 0, 40)
+            .addInt("POND_PENALTY", POND_PENALTY, 0, 20)
+            .addInt("FACTORY_BONUS", FACTORY_BONUS, 0, 20);
+    }
+
+    public void tune(Parameters p) {
+        BASE_BUILDING_SCORE = p.getInt("BASE_BUILDING_SCORE");
+        PACKING_FACTOR_MULTIPLE = p.getInt("PACKING_FACTOR_MULTIPLE");
+        POND_BONUS_SCORE = p.getInt("POND_BONUS_SCORE");
+        FIELD_BONUS_SCORE = p.getInt("FIELD_BONUS_SCORE");
+        BUILD_ROAD_PENALTY = p.getInt("BUILD_ROAD_PENALTY");
+        BUILD_PARK_PENALTY = p.getInt("BUILD_PARK_PENALTY");
+        ROAD_ADJ_PENALTY = p.getInt("ROAD_ADJ_PENALTY");
+        PERIMETER_PENALTY = p.getInt("PERIMETER_PENALTY");
+        MIN_POTENTIAL_MOVES = p.getInt("MIN_POTENTIAL_MOVES");
+        ROAD_ADJ_POND_PENALTY = p.getInt("ROAD_ADJ_POND_PENALTY");
+        PARKPOND_PACKING_BONUS = p.getInt("PARKPOND_PACKING_BONUS");
+        POND_PENALTY = p.getInt("POND_PENALTY");
+        FACTORY_BONUS = p.getInt("FACTORY_BONUS");
+    }
+
     public Move getMoveIfValid(Building request, Land land, int i, int j, int ri) {
         Cell p = new Cell(i, j);
         Building b = request.rotations()[ri];
@@ -570,41 +643,243 @@ public class Player implements pentos.sim.Player {
     }
     
     /* For a given location and request, checks all rotations of the building
-       in that location and assigns a score to each, adds it to the vector of
-       potential moves
+       in that location and bounds the score of each, adds it to the list of
+       candidates. Returns the number of potential moves the candidates will
+       produce (one per rotation that can be reached by a road, two for residences)
      */
-    private void evaluateMovesAt(int i, int j, Building request,
-                                 Land land, Vector<ScoredMove> potentialMoves) {
+    private int evaluateMovesAt(int i, int j, Building request,
+                                Land land, List<BoundedCandidate> candidates) {
+        int numMoves = 0;
         // evaluate each rotation in this build spot
         for (int r = 0; r < request.rotations().length; r++) {
             Building b = request.rotations()[r];
             Cell buildingPos = new Cell(i, j);
 
-            Set<Cell> absBuildingCells = getAbsCells(b, buildingPos);
-            Set<Cell> water = new HashSet<Cell>();
-            Set<Cell> park = new HashSet<Cell>();
-            Set<Cell> road = new HashSet<Cell>();
-            
             if (land.buildable(b, buildingPos)) {
-                // TODO: replace this with improved road building algo
-                road = findShortestRoadG1(absBuildingCells, land);
-                Move potential = new Move(true, request, buildingPos, r, road, water, park);
-                if (road == null || !hasRoadConnection(b, buildingPos, land, road)) {
+                Set<Cell> absBuildingCells = getAbsCells(b, buildingPos);
+                if (!roadReachable(absBuildingCells, land)) {
                     continue;
                 }
-                int score = scoreMove(potential, land);
-                ScoredMove sMove = new ScoredMove(potential, score);
-                potentialMoves.add(sMove);
-
-                if (request.type == Building.Type.RESIDENCE) {
-                    Move potentialPlus = buildParksPonds(potential, land);
-                    int scorePlus = scoreMove(potentialPlus, land);
-                    ScoredMove sMovePlus = new ScoredMove(potentialPlus, scorePlus);
-                    potentialMoves.add(sMovePlus);
-                }
+                candidates.add(new BoundedCandidate(buildingPos, r,
+                                                    upperBound(b, buildingPos, land, absBuildingCells)));
+                numMoves += request.type == Building.Type.RESIDENCE ? 2 : 1;
             }
         } // end building rotations for loop
+        return numMoves;
     } // end evaluateMovesAt
+
+    /* Scores the candidates in decreasing order of their bound, until the
+       bound of the next one cannot beat the best move found. Returns the
+       scored moves in scan order, so ties are broken as if all were scored
+     */
+    private Vector<ScoredMove> scoreCandidates(Building request, Land land,
+                                               List<BoundedCandidate> candidates) {
+        List<BoundedCandidate> byBound = new ArrayList<BoundedCandidate>(candidates);
+        Collections.sort(byBound, new Comparator<BoundedCandidate>() {
+            public int compare(BoundedCandidate a, BoundedCandidate b) {
+                return Integer.compare(b.bound, a.bound);
+            }
+        });
+
+        int requestId = ShapeRegistry.id(request);
+        int best = Integer.MIN_VALUE;
+        for (BoundedCandidate candidate : byBound) {
+            if (candidate.bound < best) {
+                break; // neither this candidate nor the rest can win
+            }
+            // reuse the moves scored on an earlier turn if nothing they depend on was built since
+            candidate.moves = candidateCache.get(requestId, candidate.rotation, candidate.position);
+            if (candidate.moves == null) {
+                candidate.moves = scoreMovesAt(request, candidate.rotation, candidate.position, land);
+            }
+            for (ScoredMove sMove : candidate.moves) {
+                best = Math.max(best, sMove.score);
+            }
+        }
+
+        Vector<ScoredMove> potentialMoves = new Vector<ScoredMove>();
+        for (BoundedCandidate candidate : candidates) {
+            if (candidate.moves != null) {
+                potentialMoves.addAll(candidate.moves);
+            }
+        }
+        return potentialMoves;
+    }
+
+    /* Upper bound on the score of the moves of a buildable rotation at a
+       location, from the cells around the building only. The road is at
+       least as long as the distance to the nearest road or perimeter cell,
+       the cut off penalty is at least 1, and each park or pond cell (at most
+       MAX_PARK_POND_SIZE of each) or, for factories, each road cell next to
+       the building can at most turn a packing penalty into a build penalty
+     */
+    private int upperBound(Building b, Cell buildingPos, Land land,
+                           Set<Cell> absBuildingCells) {
+        int bound = b.size() * BASE_BUILDING_SCORE;
+
+        // neighbors that are empty or existing roads, and the shortest road possible
+        Set<Cell> emptyNeighbors = new HashSet<Cell>();
+        Set<Cell> roadNeighbors = new HashSet<Cell>();
+        int minRoad = Integer.MAX_VALUE;
+        for (Cell c : absBuildingCells) {
+            if (onPerimeter(land, c)) {
+                minRoad = 0;
+            }
+            for (Cell n : c.neighbors()) {
+                if (absBuildingCells.contains(n)) {
+                    continue;
+                }
+                if (road_cells.contains(n)) {
+                    roadNeighbors.add(n);
+                    minRoad = 0;
+                }
+                if (land.unoccupied(n) ||
+                    (b.type == Building.Type.RESIDENCE && land.getCellType(n) == Cell.Type.ROAD)) {
+                    emptyNeighbors.add(n);
+                }
+                if (land.unoccupied(n) && roadDistance[n.i][n.j] >= 0) {
+                    minRoad = Math.min(minRoad, roadDistance[n.i][n.j] + 1);
+                }
+            }
+        }
+        if (roadCellsNotBuilt || minRoad == Integer.MAX_VALUE) {
+            minRoad = 0;
+        }
+
+        if (b.type == Building.Type.RESIDENCE) {
+            bound -= emptyNeighbors.size() * PACKING_FACTOR_MULTIPLE;
+            bound += Math.max(0, POND_BONUS_SCORE) + Math.max(0, FIELD_BONUS_SCORE);
+            bound += 2 * MAX_PARK_POND_SIZE * Math.max(0, PACKING_FACTOR_MULTIPLE - BUILD_PARK_PENALTY);
+            bound -= minRoad * BUILD_ROAD_PENALTY;
+            if (minRoad > 0) {
+                bound -= ROAD_ADJ_PENALTY; // the last road cell is next to the building
+            }
+        }
+        else {
+            bound -= emptyNeighbors.size() * PACKING_FACTOR_MULTIPLE;
+            // best case over the number k of road cells next to the building
+            int roadScore = Integer.MIN_VALUE;
+            for (int k = 0; k <= emptyNeighbors.size(); k++) {
+                roadScore = Math.max(roadScore, k * (PACKING_FACTOR_MULTIPLE - ROAD_ADJ_PENALTY)
+                                     - Math.max(k, minRoad) * BUILD_ROAD_PENALTY);
+            }
+            bound += roadScore;
+            bound -= numAdjType(b, buildingPos, land, Cell.Type.WATER) * POND_PENALTY;
+            bound -= numAdjType(b, buildingPos, land, Cell.Type.PARK) * POND_PENALTY;
+            bound += numAdjType(b, buildingPos, land, Cell.Type.FACTORY) * FACTORY_BONUS;
+        }
+        bound -= roadNeighbors.size() * ROAD_ADJ_PENALTY;
+        bound -= countPerimeterCells(land, absBuildingCells) * PERIMETER_PENALTY;
+        bound -= 1;
+        return bound;
+    }
+
+    /* Labels each empty cell with its distance to the cells findShortestRoadG1
+       starts from (empty perimeter cells and empty cells next to a road),
+       or -1 if it cannot reach any of them
+     */
+    private void labelRoadDistances(Land land) {
+        roadDistance = new int[land.side][land.side];
+        Queue<Cell> queue = new LinkedList<Cell>();
+        for (int i = 0; i < land.side; i++) {
+            for (int j = 0; j < land.side; j++) {
+                roadDistance[i][j] = -1;
+                Cell c = new Cell(i, j);
+                if (!land.unoccupied(c)) {
+                    continue;
+                }
+                boolean source = onPerimeter(land, c);
+                for (Cell n : c.neighbors()) {
+                    if (road_cells.contains(n) && !road_cells.contains(c)) {
+                        source = true;
+                    }
+                }
+                if (source) {
+                    roadDistance[i][j] = 0;
+                    queue.add(c);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            Cell curr = queue.remove();
+            for (Cell n : curr.neighbors()) {
+                if (land.unoccupied(n) && roadDistance[n.i][n.j] < 0) {
+                    roadDistance[n.i][n.j] = roadDistance[curr.i][curr.j] + 1;
+                    queue.add(n);
+                }
+            }
+        }
+    }
+
+    /* Checks if findShortestRoadG1 finds a road (possibly empty) for a building
+     */
+    private boolean roadReachable(Set<Cell> absBuildingCells, Land land) {
+        for (Cell c : absBuildingCells) {
+            if (onPerimeter(land, c) || roadDistance[c.i][c.j] >= 0) {
+                return true;
+            }
+            for (Cell n : c.neighbors()) {
+                if (road_cells.contains(n)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /* Scores the moves of a buildable rotation at a location and caches them
+       with the region of the board the scores depend on
+     */
+    private List<ScoredMove> scoreMovesAt(Building request, int r, Cell buildingPos, Land land) {
+        List<ScoredMove> scored = new ArrayList<ScoredMove>();
+        Building b = request.rotations()[r];
+        Set<Cell> absBuildingCells = getAbsCells(b, buildingPos);
+        Set<Cell> water = new HashSet<Cell>();
+        Set<Cell> park = new HashSet<Cell>();
+        Set<Cell> road = new HashSet<Cell>();
+        cutOffBounds = null;
+
+        // TODO: replace this with improved road building algo
+        road = findShortestRoadG1(absBuildingCells, land);
+        if (road == null) {
+            // no road at all depends on the whole board
+            candidateCache.put(ShapeRegistry.id(request), r, buildingPos, scored);
+            return scored;
+        }
+        Move potential = new Move(true, request, buildingPos, r, road, water, park);
+        if (hasRoadConnection(b, buildingPos, land, road)) {
+            int score = scoreMove(potential, land);
+            ScoredMove sMove = new ScoredMove(potential, score);
+            scored.add(sMove);
+
+            if (request.type == Building.Type.RESIDENCE) {
+                Move potentialPlus = buildParksPonds(potential, land);
+                int scorePlus = scoreMove(potentialPlus, land);
+                ScoredMove sMovePlus = new ScoredMove(potentialPlus, scorePlus);
+                scored.add(sMovePlus);
+            }
+        }
+
+        // the road search only sees cells up to the road length away from the building,
+        // everything else but the cut off groups is read within LOCAL_RADIUS
+        int margin = Math.max(LOCAL_RADIUS, road.size() + 2);
+        int minI = Integer.MAX_VALUE, minJ = Integer.MAX_VALUE;
+        int maxI = Integer.MIN_VALUE, maxJ = Integer.MIN_VALUE;
+        for (Cell c : absBuildingCells) {
+            minI = Math.min(minI, c.i - margin);
+            minJ = Math.min(minJ, c.j - margin);
+            maxI = Math.max(maxI, c.i + margin);
+            maxJ = Math.max(maxJ, c.j + margin);
+        }
+        if (cutOffBounds != null) {
+            minI = Math.min(minI, cutOffBounds[0]);
+            minJ = Math.min(minJ, cutOffBounds[1]);
+            maxI = Math.max(maxI, cutOffBounds[2]);
+            maxJ = Math.max(maxJ, cutOffBounds[3]);
+        }
+        candidateCache.put(ShapeRegistry.id(request), r, buildingPos, scored, minI, minJ, maxI, maxJ);
+        return scored;
+    }
     
     /* For each request, search entire board and evaluate moves at each cell
        Add potential scored moves to a vector, and choose the best option to play
@@ -612,16 +887,19 @@ public class Player implements pentos.sim.Player {
      */
     public Move play(Building request, Land land) {
         //System.out.println("Request type: " + request.type + " " + request.toString());
-        Vector<ScoredMove> potentialMoves = new Vector<ScoredMove>();
+        List<BoundedCandidate> candidates = new ArrayList<BoundedCandidate>();
+        int numPotentialMoves = 0;
         Move nextMove = null;
+        candidateCache.sync(land);
+        labelRoadDistances(land);
         
         if (request.type == Building.Type.RESIDENCE) {
             for (int i = 0; i < land.side; i++) {
                 for (int j = 0; j < land.side; j++) {
-                    evaluateMovesAt(i, j, request, land, potentialMoves);  
+                    numPotentialMoves += evaluateMovesAt(i, j, request, land, candidates);  
                 }
 
-                if (i >= resHighestI && potentialMoves.size() >= MIN_POTENTIAL_MOVES) {
+                if (i >= resHighestI && numPotentialMoves >= MIN_POTENTIAL_MOVES) {
                     break; // searched thru constrained space and found enough moves
                 }
             }
@@ -630,16 +908,20 @@ public class Player implements pentos.sim.Player {
         else { // FACTORIES
             for (int i = land.side-1; i >= 0; i--) {
                 for (int j = land.side-1; j >= 0; j--) {
-                    evaluateMovesAt(i, j, request, land, potentialMoves);  
+                    numPotentialMoves += evaluateMovesAt(i, j, request, land, candidates);  
                 }
-                if (potentialMoves.size() >= MIN_POTENTIAL_MOVES) {
+                if (numPotentialMoves >= MIN_POTENTIAL_MOVES) {
                     break; // searched thru constrained space and found enough moves
                 }
             }
         }
+        Vector<ScoredMove> potentialMoves = scoreCandidates(request, land, candidates);
 
         // if no potential moves found, try one more run with default player
         if (potentialMoves.size() == 0) {
+            // adds to road_cells roads that are never built, which the cache cannot see
+            candidateCache.clear();
+            roadCellsNotBuilt = true;
             for (int i = 0 ; i < land.side ; i++) {
                 for (int j = 0 ; j < land.side ; j++) {
                     for (int ri = 0 ; ri < request.rotations().length ; ri++) {
@@ -720,9 +1002,12 @@ public class Player implements pentos.sim.Player {
     }
     
     /* Returns set of empty cells that are connected to this empty cell
+       Stops early once a cell of the group is on the perimeter or next to a
+       road, as only the size of groups cut off from the roads matters
      */
     private Set<Cell> getConnectedEmptyCells(Cell c, Land land,
-                                             Set<Cell> markedForConstruction) {
+                                             Set<Cell> markedForConstruction,
+                                             Set<Cell> roadMarkedForConstruction) {
         Set<Cell> emptyCellGroup = new HashSet<Cell>();
         Set<Cell> visited = new HashSet<Cell>();
         Stack<Cell> stack = new Stack<Cell>();
@@ -734,7 +1019,20 @@ public class Player implements pentos.sim.Player {
             Cell curr = stack.pop();
             emptyCellGroup.add(curr);
             visited.add(curr);
+            if (onPerimeter(land, curr)) {
+                break;
+            }
             Cell[] neighbors = curr.neighbors();
+            boolean nextToRoad = false;
+            for (Cell n : neighbors) {
+                if (land.getCellType(n.i, n.j) == Cell.Type.ROAD ||
+                    roadMarkedForConstruction.contains(n)) {
+                    nextToRoad = true;
+                }
+            }
+            if (nextToRoad) {
+                break;
+            }
             for (Cell n : neighbors) {
                 if (visited.contains(n)) {
                     continue;
@@ -780,8 +1078,9 @@ public class Player implements pentos.sim.Player {
         Set<Set<Cell>> unconnectedGroups = new HashSet<Set<Cell>>();
         for (Cell c : neighbors) {
             if (land.unoccupied(c) && !markedForConstruction.contains(c)) {
-                Set<Cell> group = getConnectedEmptyCells(c, land, markedForConstruction);
+                Set<Cell> group = getConnectedEmptyCells(c, land, markedForConstruction, road);
                 emptyCellGroups.add(group);
+                extendCutOffBounds(group);
             }
         }
 
@@ -805,6 +1104,22 @@ public class Player implements pentos.sim.Player {
         return unconnectedCount;
     }
 
+    /* Extends the bounds of the cut off groups by a group and its neighbors
+       (the cells the search of the group read)
+     */
+    private void extendCutOffBounds(Set<Cell> group) {
+        if (cutOffBounds == null) {
+            cutOffBounds = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE,
+                                      Integer.MIN_VALUE, Integer.MIN_VALUE};
+        }
+        for (Cell c : group) {
+            cutOffBounds[0] = Math.min(cutOffBounds[0], c.i - 1);
+            cutOffBounds[1] = Math.min(cutOffBounds[1], c.j - 1);
+            cutOffBounds[2] = Math.max(cutOffBounds[2], c.i + 1);
+            cutOffBounds[3] = Math.max(cutOffBounds[3], c.j + 1);
+        }
+    }
+
     int countRoadAdjParkPond(Set<Cell> road, Land land, Set<Cell> water, Set<Cell> park) {
         Set<Cell> roadCellsAdj = new HashSet<Cell>();
         Set<Cell> neighbors = new HashSet<Cell>();
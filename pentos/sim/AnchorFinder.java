@@ -0,0 +1,78 @@
+package pentos.sim;
+
+import java.util.*;
+
+// computes all legal anchors of a building rotation at once
+// the land keeps one bit per cell in a word per row, so the anchors where the
+// whole footprint is free are the AND of the free rows shifted by each footprint
+// cell (a morphological erosion), after removing cells next to a building of the
+// other type (a dilation of the factory or residence plane)
+public class AnchorFinder {
+
+    // widest board supported by the word-level computation
+    public static final int max_side = Long.SIZE;
+
+    private AnchorFinder() {}
+
+    // check if the word-level computation is available for the land
+    public static boolean supports(Land land) {
+	return land.empty_rows != null;
+    }
+
+    // bit j of row i is set iff land.buildable(building, new Cell(i, j))
+    // the building is used in its current orientation (one of request.rotations())
+    public static long[] legalAnchors(Land land, Building building) {
+	if (!supports(land))
+	    throw new IllegalArgumentException("Land wider than " + max_side + " cells");
+	int side = land.side;
+	long full = side == Long.SIZE ? -1L : (1L << side) - 1;
+	// cells that can be covered: empty and not next to a building of the other type
+	long[] other = building.type == Building.Type.RESIDENCE ? land.factory_rows : land.residence_rows;
+	long[] allowed = new long[side];
+	for (int i = 0 ; i != side ; ++i) {
+	    long halo = other[i] | (other[i] << 1) | (other[i] >>> 1);
+	    if (i > 0) halo |= other[i-1];
+	    if (i < side-1) halo |= other[i+1];
+	    allowed[i] = land.empty_rows[i] & ~halo & full;
+	}
+	// erosion of the allowed plane by the footprint
+	long[] anchors = new long[side];
+	Arrays.fill(anchors, full);
+	for (Cell p : building) {
+	    if (p.j >= Long.SIZE) {
+		Arrays.fill(anchors, 0);
+		break;
+	    }
+	    for (int i = 0 ; i != side ; ++i)
+		anchors[i] &= i + p.i < side ? allowed[i + p.i] >>> p.j : 0;
+	}
+	return anchors;
+    }
+
+    // number of legal anchors in a bitmap
+    public static int count(long[] anchors) {
+	int count = 0;
+	for (long row : anchors)
+	    count += Long.bitCount(row);
+	return count;
+    }
+
+    // legal anchors of a building rotation in row-major order (any board size)
+    public static List<Cell> legalCells(Land land, Building building) {
+	List<Cell> cells = new ArrayList<Cell>();
+	if (!supports(land)) {
+	    for (int i = 0 ; i != land.side ; ++i)
+		for (int j = 0 ; j != land.side ; ++j) {
+		    Cell q = new Cell(i, j);
+		    if (land.buildable(building, q))
+			cells.add(q);
+		}
+	    return cells;
+	}
+	long[] anchors = legalAnchors(land, building);
+	for (int i = 0 ; i != anchors.length ; ++i)
+	    for (long row = anchors[i] ; row != 0 ; row &= row - 1)
+		cells.add(new Cell(i, Long.numberOfTrailingZeros(row)));
+	return cells;
+    }
+}
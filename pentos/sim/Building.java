@@ -17,9 +17,13 @@ public class Building implements Iterable <Cell> {
 
     public final Type type;
 
+    // ids in the shape registry (-1 if not interned)
+    int form_id = -1;
+    int shape_id = -1;
+
     // internal constructor
     private Building(Set <Cell> cells, Building rotate, Type type) {
-	this.cells = cells;
+	this.cells = Collections.unmodifiableSet(cells);
 	this.rotate = rotate;
 	this.type = type;
 	hash = cells.hashCode();
@@ -51,7 +55,7 @@ public class Building implements Iterable <Cell> {
 	    cells_2.add(new Cell(max_i - p.i, max_j - p.j));
 	    cells_3.add(new Cell(max_j - p.j, p.i - min_i));
 	}
-	this.cells = cells_0;
+	this.cells = Collections.unmodifiableSet(cells_0);
 	hash = cells_0.hashCode();
 	if (cells_0.equals(cells_1))
 	    rotate = this;
@@ -96,6 +100,11 @@ public class Building implements Iterable <Cell> {
 
     // check if buildings are equal
     public boolean equals(Building building) {
+	if (this == building)
+	    return true;
+	// interned buildings are equal iff they are rotations of the same shape
+	if (shape_id >= 0 && building.shape_id >= 0 && type == building.type)
+	    return shape_id == building.shape_id;
 	if (cells.size() == building.cells.size()) {
 	    Building rot = this;
 	    do {
@@ -0,0 +1,112 @@
+package pentos.sim;
+
+import java.util.*;
+
+// cache of per-candidate results (scores, planned moves) across turns
+// a candidate is a shape, a rotation and an anchor cell; every entry records the
+// rectangle of the land its value depends on and is dropped as soon as a cell in
+// that rectangle is built; least recently used entries are evicted beyond capacity
+public class CandidateCache<V> {
+
+    private static class Entry<V> {
+	final V value;
+	final int i0, j0, i1, j1;
+
+	Entry(V value, int i0, int j0, int i1, int j1) {
+	    this.value = value;
+	    this.i0 = i0;
+	    this.j0 = j0;
+	    this.i1 = i1;
+	    this.j1 = j1;
+	}
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Long, Entry<V>> entries;
+
+    // the land and version the entries are valid for
+    private Land land = null;
+    private int version = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public CandidateCache(int capacity) {
+	if (capacity <= 0)
+	    throw new IllegalArgumentException("Non-positive cache capacity");
+	this.capacity = capacity;
+	entries = new LinkedHashMap<Long, Entry<V>>(16, 0.75f, true) {
+	    private static final long serialVersionUID = 1L;
+
+	    protected boolean removeEldestEntry(Map.Entry<Long, Entry<V>> eldest) {
+		return size() > CandidateCache.this.capacity;
+	    }
+	};
+    }
+
+    // drop the entries whose region was built on since the last call
+    // must be called with the current land before any get or put of a turn
+    public void sync(Land land) {
+	if (this.land != land || version > land.version()) {
+	    entries.clear();
+	    this.land = land;
+	    version = land.version();
+	    return;
+	}
+	List<Cell> changes = land.changesSince(version);
+	version = land.version();
+	if (changes.isEmpty() || entries.isEmpty()) return;
+	// prefix sums of the changed cells to test each region in constant time
+	int n = land.side + 1;
+	int[] sums = new int[n * n];
+	for (Cell q : changes)
+	    sums[(q.i+1)*n + q.j+1] = 1;
+	for (int i = 1 ; i != n ; ++i)
+	    for (int j = 1 ; j != n ; ++j)
+		sums[i*n + j] += sums[(i-1)*n + j] + sums[i*n + j-1] - sums[(i-1)*n + j-1];
+	Iterator<Entry<V>> it = entries.values().iterator();
+	while (it.hasNext()) {
+	    Entry<V> e = it.next();
+	    int i0 = Math.max(e.i0, 0), j0 = Math.max(e.j0, 0);
+	    int i1 = Math.min(e.i1, land.side-1), j1 = Math.min(e.j1, land.side-1);
+	    if (i0 > i1 || j0 > j1) continue;
+	    if (sums[(i1+1)*n + j1+1] - sums[i0*n + j1+1] - sums[(i1+1)*n + j0] + sums[i0*n + j0] != 0)
+		it.remove();
+	}
+    }
+
+    // cached value of a candidate, null if absent
+    public V get(int shape, int rotation, Cell anchor) {
+	Entry<V> e = entries.get(key(shape, rotation, anchor));
+	if (e == null) {
+	    misses++;
+	    return null;
+	}
+	hits++;
+	return e.value;
+    }
+
+    // cache the value of a candidate which depends only on rows i0..i1 and columns j0..j1
+    public void put(int shape, int rotation, Cell anchor, V value, int i0, int j0, int i1, int j1) {
+	entries.put(key(shape, rotation, anchor), new Entry<V>(value, i0, j0, i1, j1));
+    }
+
+    // cache the value of a candidate which may depend on any cell of the land
+    public void put(int shape, int rotation, Cell anchor, V value) {
+	put(shape, rotation, anchor, value, Integer.MIN_VALUE, Integer.MIN_VALUE,
+	    Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    public void clear() {
+	entries.clear();
+    }
+
+    public int size() {return entries.size();}
+    public long hits() {return hits;}
+    public long misses() {return misses;}
+
+    private static long key(int shape, int rotation, Cell anchor) {
+	return ((long) shape << 40) | ((long) (rotation & 0xFF) << 32) |
+	    ((long) (anchor.i & 0xFFFF) << 16) | (anchor.j & 0xFFFF);
+    }
+}
@@ -0,0 +1,192 @@
+package pentos.sim;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// compares two players (or one player under two sets of parameters) on paired games
+// pair k plays seed first_seed + k / sequencers of sequencer k % sequencers for both,
+// so both see the very same requests and only the differences of the scores matter
+// instead of a fixed number of seeds, Wald's sequential probability ratio test is
+// applied to the differences after every pair: A better by delta against B better
+// by delta, each with the error rate 1 - confidence, the variance being estimated
+// from the differences so far (after min_pairs). it stops as soon as either is accepted, which takes
+// a handful of pairs when the players differ clearly; differences smaller than
+// delta do not matter by definition and may be called either way
+class Compare {
+
+    private final String[] groups;
+    private final String[] names;
+    private final Parameters[] parameters;
+    private final String[] sequencers;
+    private final Map <String, Class <Sequencer>> s_classes = new HashMap <String, Class <Sequencer>> ();
+    private final long first_seed;
+    private final long cpu_time_ms;
+
+    private final AtomicInteger[] timeouts = new AtomicInteger [] {new AtomicInteger(0), new AtomicInteger(0)};
+
+    private Compare(String[] groups, String[] names, Parameters[] parameters, String[] sequencers,
+		    long first_seed, long cpu_time_ms) throws Exception
+    {
+	this.groups = groups;
+	this.names = names;
+	this.parameters = parameters;
+	this.sequencers = sequencers;
+	this.first_seed = first_seed;
+	this.cpu_time_ms = cpu_time_ms;
+	// compile the players once before the games load them concurrently
+	for (String group : groups) {
+	    GameClassLoader loader = new GameClassLoader("pentos", Simulator.class.getClassLoader());
+	    Simulator.load_player(group, loader);
+	    loader.close();
+	}
+	// sequencers may outlive the games in the sequence cache
+	for (String sequencer : sequencers)
+	    s_classes.put(sequencer, Simulator.load_sequencer
+			  (sequencer, new GameClassLoader("pentos", Simulator.class.getClassLoader())));
+    }
+
+    private Future <Integer> game(ExecutorService pool, final int player, int pair)
+    {
+	final String sequencer = sequencers[pair % sequencers.length];
+	final long seed = first_seed + pair / sequencers.length;
+	return pool.submit(new Callable <Integer> () {
+		public Integer call() throws Exception
+		{
+		    return Simulator.play(groups[player], sequencer, s_classes.get(sequencer), seed,
+					  cpu_time_ms, parameters[player], timeouts[player]);
+		}
+	    });
+    }
+
+    // play pairs until the test decides or max_pairs are played
+    private void run(double delta, double confidence, int min_pairs, int max_pairs, int threads)
+	throws Exception
+    {
+	double alpha = 1.0 - confidence;
+	double accept_a = Math.log((1.0 - alpha) / alpha);
+	double accept_b = Math.log(alpha / (1.0 - alpha));
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	// the games of the pairs after the current one run ahead on the idle threads
+	// the two games of each pair, one after the other
+	LinkedList <Future <Integer>> running = new LinkedList <Future <Integer>> ();
+	int submitted = 0;
+	int n = 0;
+	double mean = 0.0, m2 = 0.0;
+	String decision = null;
+	while (n < max_pairs && decision == null) {
+	    while (submitted < max_pairs && (submitted - n) * 2 < threads + 2) {
+		running.add(game(pool, 0, submitted));
+		running.add(game(pool, 1, submitted));
+		submitted++;
+	    }
+	    int a = running.removeFirst().get();
+	    int b = running.removeFirst().get();
+	    // running mean and variance of the differences
+	    double d = a - b;
+	    n++;
+	    double step = d - mean;
+	    mean += step / n;
+	    m2 += step * (d - mean);
+	    String line = String.format("Pair %d (%s, seed %d): %s %d, %s %d, difference %+d",
+					n, sequencers[(n - 1) % sequencers.length],
+					first_seed + (n - 1) / sequencers.length,
+					names[0], a, names[1], b, a - b);
+	    if (n >= min_pairs) {
+		// the log likelihood ratio of mean +delta against -delta for normal differences
+		double variance = Math.max(m2 / (n - 1), 1.0);
+		double llr = 2.0 * delta * mean * n / variance;
+		line += String.format(", log-likelihood ratio %.2f", llr);
+		if (llr >= accept_a)
+		    decision = names[0] + " is better than " + names[1];
+		else if (llr <= accept_b)
+		    decision = names[1] + " is better than " + names[0];
+	    }
+	    System.err.println(line);
+	}
+	pool.shutdownNow();
+	double sd = n > 1 ? Math.sqrt(m2 / (n - 1)) : 0.0;
+	double half = n > 1 ? 1.96 * sd / Math.sqrt(n) : Double.POSITIVE_INFINITY;
+	System.err.println(String.format("Mean difference %+.1f (95%% interval %+.1f to %+.1f, deviation %.1f) over %d pairs",
+					 mean, mean - half, mean + half, sd, n));
+	if (decision != null)
+	    System.err.println(String.format("Decided at %.0f%% confidence (indifference %.1f): %s",
+					     confidence * 100, delta, decision));
+	else
+	    System.err.println(String.format("Undecided after %d pairs at %.0f%% confidence (indifference %.1f)",
+					     n, confidence * 100, delta));
+	for (int p = 0 ; p != 2 ; ++p)
+	    if (timeouts[p].get() > 0)
+		System.err.println("Player " + names[p] + " timed out in " + timeouts[p].get() + " games");
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+	String[] groups = new String [2];
+	String[] parameter_paths = new String [2];
+	String[] sequencers = new String [] {"random"};
+	double delta = 10.0;
+	double confidence = 0.95;
+	int min_pairs = 10;
+	int max_pairs = 200;
+	int threads = Runtime.getRuntime().availableProcessors();
+	long first_seed = 1;
+	long cpu_time_ms = 300 * 1000;
+	Parameters[] parameters = new Parameters [2];
+	String[] names = new String [2];
+	try {
+	    for (int a = 0 ; a != args.length ; ++a) {
+		String arg = args[a];
+		if (a + 1 >= args.length)
+		    throw new IllegalArgumentException("Missing value of " + arg);
+		if (arg.equals("-a")) groups[0] = args[++a];
+		else if (arg.equals("-b")) groups[1] = args[++a];
+		else if (arg.equals("-pa") || arg.equals("--parameters-a")) parameter_paths[0] = args[++a];
+		else if (arg.equals("-pb") || arg.equals("--parameters-b")) parameter_paths[1] = args[++a];
+		else if (arg.equals("-s") || arg.equals("--sequencers")) sequencers = args[++a].split(",");
+		else if (arg.equals("-d") || arg.equals("--delta")) delta = Double.parseDouble(args[++a]);
+		else if (arg.equals("-c") || arg.equals("--confidence")) confidence = Double.parseDouble(args[++a]);
+		else if (arg.equals("--min-pairs")) min_pairs = Integer.parseInt(args[++a]);
+		else if (arg.equals("--max-pairs")) max_pairs = Integer.parseInt(args[++a]);
+		else if (arg.equals("-t") || arg.equals("--threads")) threads = Integer.parseInt(args[++a]);
+		else if (arg.equals("-i") || arg.equals("--first-seed")) first_seed = Long.parseLong(args[++a]);
+		else if (arg.equals("--cpu-time")) cpu_time_ms = Long.parseLong(args[++a]);
+		else throw new IllegalArgumentException("Unknown argument: " + arg);
+	    }
+	    if (groups[0] == null && groups[1] == null)
+		throw new IllegalArgumentException("Missing group names");
+	    // one group under two sets of parameters
+	    if (groups[0] == null) groups[0] = groups[1];
+	    if (groups[1] == null) groups[1] = groups[0];
+	    if (!(delta > 0.0) || !(confidence > 0.5 && confidence < 1.0) ||
+		min_pairs < 2 || max_pairs < min_pairs || threads < 1)
+		throw new IllegalArgumentException("Invalid test settings");
+	    if (groups[0].equals(groups[1]) && parameter_paths[0] == null && parameter_paths[1] == null)
+		throw new IllegalArgumentException("Nothing to compare");
+	    for (int p = 0 ; p != 2 ; ++p) {
+		names[p] = groups[p];
+		if (parameter_paths[p] != null) {
+		    parameters[p] = Parameters.read(parameter_paths[p]);
+		    names[p] += " (" + parameter_paths[p] + ")";
+		}
+	    }
+	} catch (Exception e) {
+	    System.err.println("Invalid arguments: " + e.getMessage());
+	    System.err.println("Usage: java pentos.sim.Compare -a <group> -b <group> [-pa <parameters file>]"
+			       + " [-pb <parameters file>] [-s <sequencer,...>] [-d <indifference>]"
+			       + " [-c <confidence>] [--min-pairs <n>] [--max-pairs <n>] [-t <threads>]"
+			       + " [-i <first seed>] [--cpu-time <ms>]");
+	    System.exit(1);
+	}
+	try {
+	    new Compare(groups, names, parameters, sequencers, first_seed, cpu_time_ms)
+		.run(delta, confidence, min_pairs, max_pairs, threads);
+	} catch (Exception e) {
+	    System.err.println("Exception during comparison: " + e.getMessage());
+	    e.printStackTrace();
+	    System.exit(1);
+	}
+	// players that timed out may still be running
+	System.exit(0);
+    }
+}
@@ -0,0 +1,227 @@
+package pentos.sim;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+// hands out the games of a tournament to worker processes over TCP
+// a worker opens one connection per game it plays at a time and speaks lines:
+//   worker: HELLO <name>              once, naming the worker
+//   worker: NEXT                      asks for a game
+//   coordinator: JOB <id> <player> <sequencer> <seed> <code> <lease ms>
+//                    <allocation budget MB> <heap budget MB>   (0 for none)
+//              | WAIT <ms>            nothing to hand out now, ask again later
+//              | DONE                 the tournament is over
+//   worker: ALIVE <id>                renews the lease of the game it plays
+//   worker: TRACE <id> <text>         a line of output of the game
+//   worker: RESULT <id> <score> <status> <seconds>
+//   worker: REJECT <id>               cannot play the game (other sources), gives it back
+// a game is leased to the worker playing it: if the connection is lost or the
+// lease is not renewed in time, the game goes back to the queue and another
+// worker plays it; the first result of a game counts, later ones are ignored
+class Coordinator {
+
+    private static class Lease {
+	final Handler owner;
+	final long dispatched = System.currentTimeMillis();
+	long deadline;
+
+	Lease(Handler owner, long deadline)
+	{
+	    this.owner = owner;
+	    this.deadline = deadline;
+	}
+    }
+
+    private final Tournament tournament;
+    private final ServerSocket server;
+    private final long lease_ms;
+    // memory budgets of the games in megabytes, 0 for none
+    private final long alloc_budget;
+    private final long heap_budget;
+    private final Map <Tournament.Game, Lease> leases = new HashMap <Tournament.Game, Lease> ();
+    private int connections = 0;
+    // games, seconds playing and seconds from dispatch to result of each worker
+    private final Map <String, double[]> stats = new TreeMap <String, double[]> ();
+
+    public Coordinator(Tournament tournament, int port, long lease_ms,
+		       long alloc_budget, long heap_budget) throws IOException
+    {
+	this.tournament = tournament;
+	this.lease_ms = lease_ms;
+	this.alloc_budget = alloc_budget;
+	this.heap_budget = heap_budget;
+	server = new ServerSocket(port);
+    }
+
+    private synchronized Tournament.Game lease(Handler owner)
+    {
+	Tournament.Game g = tournament.next();
+	if (g != null)
+	    leases.put(g, new Lease(owner, System.currentTimeMillis() + lease_ms));
+	return g;
+    }
+
+    private synchronized void renew(Handler owner, Tournament.Game g)
+    {
+	Lease l = leases.get(g);
+	if (l != null && l.owner == owner)
+	    l.deadline = System.currentTimeMillis() + lease_ms;
+    }
+
+    // the game is back in the queue unless another worker has it now
+    private synchronized boolean release(Handler owner, Tournament.Game g)
+    {
+	Lease l = leases.get(g);
+	if (l == null || l.owner != owner) return false;
+	leases.remove(g);
+	tournament.requeue(g);
+	return true;
+    }
+
+    private synchronized void result(Handler owner, Tournament.Game g, Tournament.Result r)
+	throws IOException
+    {
+	Lease l = leases.get(g);
+	if (l != null && l.owner == owner) leases.remove(g);
+	if (!tournament.finish(g, r, owner.name)) {
+	    System.err.println("Ignored a second result of " + g + " from " + owner.name);
+	    return;
+	}
+	double[] s = stats.get(owner.name);
+	if (s == null) stats.put(owner.name, s = new double [3]);
+	s[0]++;
+	s[1] += r.seconds;
+	if (l != null) s[2] += (System.currentTimeMillis() - l.dispatched) / 1000.0;
+    }
+
+    private synchronized void connected(int delta)
+    {
+	connections += delta;
+	tournament.setWorkers(connections);
+    }
+
+    // requeue the games whose lease ran out
+    private synchronized void expire()
+    {
+	long now = System.currentTimeMillis();
+	Iterator <Map.Entry <Tournament.Game, Lease>> it = leases.entrySet().iterator();
+	while (it.hasNext()) {
+	    Map.Entry <Tournament.Game, Lease> e = it.next();
+	    if (e.getValue().deadline < now) {
+		System.err.println("Lease of " + e.getKey() + " on " + e.getValue().owner.name +
+				   " expired, playing it again");
+		it.remove();
+		tournament.requeue(e.getKey());
+	    }
+	}
+    }
+
+    private class Handler extends Thread {
+
+	private final Socket socket;
+	String name;
+
+	Handler(Socket socket)
+	{
+	    this.socket = socket;
+	    name = socket.getRemoteSocketAddress().toString();
+	    setDaemon(true);
+	}
+
+	public void run()
+	{
+	    Tournament.Game current = null;
+	    connected(1);
+	    try {
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+		String line;
+		while ((line = in.readLine()) != null) {
+		    String[] field = line.split(" ", 3);
+		    Tournament.Game g = field.length > 1 ? tournament.game(parse(field[1])) : null;
+		    if (field[0].equals("HELLO") && field.length > 1)
+			name = line.substring(6);
+		    else if (field[0].equals("NEXT")) {
+			// a worker asking again has given up its game
+			if (current != null) release(this, current);
+			current = lease(this);
+			if (current != null)
+			    out.println("JOB " + current.id + " " + current.player + " " + current.sequencer +
+					" " + current.seed + " " + current.code + " " + lease_ms +
+					" " + alloc_budget + " " + heap_budget);
+			else if (tournament.done())
+			    out.println("DONE");
+			else
+			    out.println("WAIT 1000");
+			out.flush();
+		    } else if (field[0].equals("ALIVE") && g != null)
+			renew(this, g);
+		    else if (field[0].equals("REJECT") && g != null) {
+			if (release(this, g))
+			    System.err.println("Worker " + name + " has other sources than " + g + ", playing it elsewhere");
+			if (g == current) current = null;
+		    } else if (field[0].equals("TRACE") && g != null)
+			tournament.trace(name, g, field.length > 2 ? field[2] : "");
+		    else if (field[0].equals("RESULT") && g != null && field.length > 2) {
+			String[] r = field[2].split(" ");
+			if (r.length != 3)
+			    throw new IOException("Invalid result: " + line);
+			result(this, g, new Tournament.Result(Integer.parseInt(r[0]), r[1], Double.parseDouble(r[2])));
+			if (g == current) current = null;
+		    } else
+			throw new IOException("Invalid message: " + line);
+		}
+	    } catch (Exception e) {
+		System.err.println("Worker " + name + " lost: " + e.getMessage());
+	    } finally {
+		if (current != null && release(this, current))
+		    System.err.println("Worker " + name + " left while playing " + current + ", playing it again");
+		connected(-1);
+		try {
+		    socket.close();
+		} catch (IOException e) {}
+	    }
+	}
+    }
+
+    private static int parse(String id)
+    {
+	try {
+	    return Integer.parseInt(id);
+	} catch (NumberFormatException e) {
+	    return -1;
+	}
+    }
+
+    public void run() throws Exception
+    {
+	System.err.println("Waiting for workers on port " + server.getLocalPort());
+	Thread acceptor = new Thread() {
+		public void run()
+		{
+		    try {
+			for (;;)
+			    new Handler(server.accept()).start();
+		    } catch (IOException e) {}
+		}
+	    };
+	acceptor.setDaemon(true);
+	acceptor.start();
+	while (!tournament.done()) {
+	    Thread.sleep(1000);
+	    expire();
+	}
+	// let the workers ask once more and hear that it is over
+	Thread.sleep(2000);
+	server.close();
+	tournament.summary();
+	synchronized (this) {
+	    for (Map.Entry <String, double[]> e : stats.entrySet()) {
+		double[] s = e.getValue();
+		System.err.println(String.format("Worker %s: %d games, %.1fs per game, %.1fs from dispatch to result",
+						 e.getKey(), (long) s[0], s[1] / s[0], s[2] / s[0]));
+	    }
+	}
+    }
+}
@@ -0,0 +1,89 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+
+// how long the games of each (player, sequencer) pair took, kept across tournaments
+// the file has one "player,sequencer,games,seconds" line per pair, seconds being
+// the running mean (weighted towards the last games once there are enough of them)
+// games finished during a tournament are recorded right away, so the estimates of
+// players without history become live ones as soon as their first games end
+class DurationHistory {
+
+    // beyond this many games the mean follows the recent ones
+    private static final int window = 20;
+
+    private final String path;
+    private final Map <String, double[]> durations = new HashMap <String, double[]> ();
+
+    public DurationHistory(String path) throws IOException
+    {
+	this.path = path;
+	if (path == null || !new File(path).exists()) return;
+	BufferedReader reader = new BufferedReader(new FileReader(path));
+	try {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		String[] field = line.trim().split(",");
+		if (field.length != 4) continue;
+		try {
+		    durations.put(key(field[0], field[1]), new double []
+			{Double.parseDouble(field[2]), Double.parseDouble(field[3])});
+		} catch (NumberFormatException e) {}
+	    }
+	} finally {
+	    reader.close();
+	}
+    }
+
+    private static String key(String player, String sequencer)
+    {
+	return player + "," + sequencer;
+    }
+
+    public synchronized void record(String player, String sequencer, double seconds)
+    {
+	double[] d = durations.get(key(player, sequencer));
+	if (d == null) durations.put(key(player, sequencer), d = new double [2]);
+	d[0]++;
+	d[1] += (seconds - d[1]) / Math.min(d[0], window);
+    }
+
+    // expected seconds of a game: the mean of the pair if known, else the mean of
+    // the player over other sequencers, else the longest mean known (a player
+    // nothing is known of may be the slowest, so it had better start early)
+    public synchronized double expected(String player, String sequencer)
+    {
+	double[] d = durations.get(key(player, sequencer));
+	if (d != null) return d[1];
+	double games = 0, seconds = 0, longest = 0;
+	for (Map.Entry <String, double[]> e : durations.entrySet()) {
+	    longest = Math.max(longest, e.getValue()[1]);
+	    if (e.getKey().startsWith(player + ",")) {
+		games += e.getValue()[0];
+		seconds += e.getValue()[0] * e.getValue()[1];
+	    }
+	}
+	return games > 0 ? seconds / games : longest;
+    }
+
+    // write the history (a crash while writing leaves the previous file)
+    public synchronized void save() throws IOException
+    {
+	if (path == null) return;
+	File file = new File(path);
+	File temp = new File(path + ".tmp");
+	PrintStream out = new PrintStream(new FileOutputStream(temp));
+	for (Map.Entry <String, double[]> e : new TreeMap <String, double[]> (durations).entrySet())
+	    out.println(e.getKey() + "," + (long) e.getValue()[0] + "," +
+			String.format(Locale.ROOT, "%.3f", e.getValue()[1]));
+	out.close();
+	if (out.checkError())
+	    throw new IOException("Cannot write " + temp);
+	if (!temp.renameTo(file)) {
+	    file.delete();
+	    if (!temp.renameTo(file))
+		throw new IOException("Cannot replace " + path);
+	}
+    }
+}
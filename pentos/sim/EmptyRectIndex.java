@@ -0,0 +1,68 @@
+package pentos.sim;
+
+// per anchor cell, the height of the tallest empty rectangle of each width
+// whose top left corner is the anchor, capped at limit rows and columns
+// building a cell only changes the anchors up to limit cells above and to the
+// left of it, so updates take O(limit^3) and queries a single array read
+class EmptyRectIndex {
+
+    // widest and tallest rectangle tracked exactly
+    public static final int limit = 8;
+
+    private final int side;
+
+    // empty cells going down from each cell (capped at limit)
+    private final byte[] down;
+
+    // extent[(i * side + j) * limit + (w-1)]: height of the tallest empty w-wide rectangle at (i, j)
+    private final byte[] extent;
+
+    public EmptyRectIndex(int side)
+    {
+	this.side = side;
+	down = new byte [side * side];
+	extent = new byte [side * side * limit];
+	for (int i = 0 ; i != side ; ++i)
+	    for (int j = 0 ; j != side ; ++j)
+		down[i * side + j] = (byte) Math.min(side - i, limit);
+	update(0, side - 1, 0, side - 1);
+    }
+
+    // a cell was built
+    public void occupy(int i, int j)
+    {
+	// runs of the cells above in the same column
+	down[i * side + j] = 0;
+	int top = Math.max(0, i - limit + 1);
+	for (int r = i - 1 ; r >= top ; --r) {
+	    int k = r * side + j;
+	    if (down[k] == 0) break;
+	    down[k] = (byte) Math.min(limit, down[k + side] + 1);
+	}
+	update(top, i, Math.max(0, j - limit + 1), j);
+    }
+
+    // height (at most limit) of the tallest empty rectangle of the given width at (i, j)
+    public int height(int i, int j, int width)
+    {
+	if (width < 1 || width > limit) throw new IllegalArgumentException("Width out of range: " + width);
+	return extent[(i * side + j) * limit + width - 1];
+    }
+
+    // recompute the extents of the anchors in rows i0..i1 and columns j0..j1
+    private void update(int i0, int i1, int j0, int j1)
+    {
+	for (int i = i0 ; i <= i1 ; ++i)
+	    for (int j = j0 ; j <= j1 ; ++j) {
+		int base = (i * side + j) * limit;
+		int h = limit;
+		for (int w = 1 ; w <= limit ; ++w) {
+		    if (j + w - 1 < side)
+			h = Math.min(h, down[i * side + j + w - 1]);
+		    else
+			h = 0;
+		    extent[base + w - 1] = (byte) h;
+		}
+	    }
+    }
+}
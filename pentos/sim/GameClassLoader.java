@@ -0,0 +1,46 @@
+package pentos.sim;
+
+import java.io.*;
+import java.net.*;
+
+// loads the player and sequencer of a single game in isolation
+// every class under the root package is defined again by this loader,
+// so static state of a player cannot leak into another game, while the
+// classes of the simulator package itself are always shared from the parent
+class GameClassLoader extends URLClassLoader {
+
+    static {
+	registerAsParallelCapable();
+    }
+
+    private final String isolated;
+    private final String shared;
+
+    public GameClassLoader(String root, ClassLoader parent) throws IOException
+    {
+	super(new URL [] {new File(".").getCanonicalFile().toURI().toURL()}, parent);
+	if (parent == null)
+	    throw new IOException("Cannot find Java class loader");
+	isolated = root + ".";
+	shared = root + ".sim.";
+    }
+
+    protected Class <?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+    {
+	if (!name.startsWith(isolated) || name.startsWith(shared))
+	    return super.loadClass(name, resolve);
+	synchronized (getClassLoadingLock(name)) {
+	    Class <?> c = findLoadedClass(name);
+	    if (c == null)
+		try {
+		    c = findClass(name);
+		} catch (ClassNotFoundException e) {
+		    // not on the isolated path (e.g. packaged in a jar)
+		    return super.loadClass(name, resolve);
+		}
+	    if (resolve)
+		resolveClass(c);
+	    return c;
+	}
+    }
+}
@@ -6,6 +6,29 @@ public class Land {
     // the array
     protected Cell[][] land;
     protected Set<Cell> road_network; // used internally to check road validity
+    private final Set<Cell> road_view; // read-only view of the road network for players
+
+    // one bit per cell and one word per row, maintained for boards up to 64 cells wide
+    // bit j of word i is set if cell (i, j) is empty / a factory / a residence
+    long[] empty_rows;
+    long[] factory_rows;
+    long[] residence_rows;
+
+    // per cell (i * side + j): number of neighbors that are occupied or off the board,
+    // and number of neighbors of each type (indexed by type ordinal, null for EMPTY)
+    private final byte[] occupied_neighbors;
+    private final byte[][] type_neighbors = new byte[Cell.Type.values().length][];
+
+    // summed-area table per type (indexed by type ordinal), rebuilt lazily when stale
+    // entry (i * (side+1) + j) is the number of cells of the type in rows < i and columns < j
+    private final int[][] type_sums = new int[Cell.Type.values().length][];
+    private final int[] type_sums_version = new int[Cell.Type.values().length];
+
+    // tallest empty rectangles anchored at each cell
+    private final EmptyRectIndex empty_rects;
+
+    // every cell built so far in order (with its new type), the version is its length
+    private final List<Cell> journal = new ArrayList<Cell>();
     public final int side;
 
     // create new Land
@@ -26,6 +49,235 @@ public class Land {
 	    road_network.add(new Cell(z,side+1));
 	    road_network.add(new Cell(side+1,z));
 	}
+	road_view = Collections.unmodifiableSet(road_network);
+	occupied_neighbors = new byte[side*side];
+	for (int i=0; i<side; i++) {
+	    occupied_neighbors[i*side]++;
+	    occupied_neighbors[i*side+side-1]++;
+	    occupied_neighbors[i]++;
+	    occupied_neighbors[(side-1)*side+i]++;
+	}
+	for (Cell.Type t : Cell.Type.values())
+	    if (t != Cell.Type.EMPTY)
+		type_neighbors[t.ordinal()] = new byte[side*side];
+	empty_rects = new EmptyRectIndex(side);
+	if (side <= Long.SIZE) {
+	    empty_rows = new long[side];
+	    factory_rows = new long[side];
+	    residence_rows = new long[side];
+	    Arrays.fill(empty_rows, side == Long.SIZE ? -1L : (1L << side) - 1);
+	}
+    }
+
+    // record a newly built cell and keep the derived grids and indexes in sync
+    private void mark(Cell q) {
+	journal.add(q);
+	empty_rects.occupy(q.i, q.j);
+	byte[] typed = type_neighbors[q.type.ordinal()];
+	int k = q.i*side + q.j;
+	if (q.i > 0) {occupied_neighbors[k-side]++; typed[k-side]++;}
+	if (q.i < side-1) {occupied_neighbors[k+side]++; typed[k+side]++;}
+	if (q.j > 0) {occupied_neighbors[k-1]++; typed[k-1]++;}
+	if (q.j < side-1) {occupied_neighbors[k+1]++; typed[k+1]++;}
+	if (empty_rows == null) return;
+	long bit = 1L << q.j;
+	empty_rows[q.i] &= ~bit;
+	if (q.type == Cell.Type.FACTORY) factory_rows[q.i] |= bit;
+	else if (q.type == Cell.Type.RESIDENCE) residence_rows[q.i] |= bit;
+    }
+
+    // number of neighbors of a cell that are occupied or off the board (0 to 4)
+    public int occupiedNeighbors(int i, int j) {return occupied_neighbors[i*side+j];}
+
+    // number of neighbors of a cell of the given type (off-board neighbors are not counted)
+    public int countNeighbors(Cell.Type t, int i, int j) {
+	if (t == Cell.Type.EMPTY)
+	    return 4 - occupied_neighbors[i*side+j];
+	return type_neighbors[t.ordinal()][i*side+j];
+    }
+
+    // contact perimeter of a building placed at q (which must fit on the board): sum over
+    // its cells of occupied or off-board neighbors (its own cells are not built yet)
+    public int contact(Building building, Cell q) {
+	int sum = 0;
+	for (Cell p : building)
+	    sum += occupied_neighbors[(p.i+q.i)*side + p.j+q.j];
+	return sum;
+    }
+
+    // sum over the cells of a building placed at q of their neighbors of the given type
+    public int contact(Cell.Type t, Building building, Cell q) {
+	int sum = 0;
+	for (Cell p : building)
+	    sum += countNeighbors(t, p.i+q.i, p.j+q.j);
+	return sum;
+    }
+
+    // number of cells of a type in rows i0..i1 and columns j0..j1 (inclusive, clipped to the land)
+    public int countInRect(Cell.Type t, int i0, int j0, int i1, int j1) {
+	i0 = Math.max(i0, 0);
+	j0 = Math.max(j0, 0);
+	i1 = Math.min(i1, side-1);
+	j1 = Math.min(j1, side-1);
+	if (i0 > i1 || j0 > j1) return 0;
+	int[] sums = typeSums(t);
+	int n = side + 1;
+	return sums[(i1+1)*n + j1+1] - sums[i0*n + j1+1] - sums[(i1+1)*n + j0] + sums[i0*n + j0];
+    }
+
+    // check if rows i0..i1 and columns j0..j1 (inclusive) are inside the land and all empty
+    public boolean isEmptyRect(int i0, int j0, int i1, int j1) {
+	if (i0 < 0 || j0 < 0 || i1 >= side || j1 >= side || i0 > i1 || j0 > j1)
+	    return false;
+	return countInRect(Cell.Type.EMPTY, i0, j0, i1, j1) == (i1-i0+1) * (j1-j0+1);
+    }
+
+    private synchronized int[] typeSums(Cell.Type t) {
+	int k = t.ordinal();
+	int[] sums = type_sums[k];
+	if (sums != null && type_sums_version[k] == journal.size())
+	    return sums;
+	int n = side + 1;
+	if (sums == null)
+	    sums = type_sums[k] = new int[n*n];
+	for (int i=0; i<side; i++) {
+	    int row = 0;
+	    for (int j=0; j<side; j++) {
+		if (land[i][j].type == t) row++;
+		sums[(i+1)*n + j+1] = sums[i*n + j+1] + row;
+	    }
+	}
+	type_sums_version[k] = journal.size();
+	return sums;
+    }
+
+    // widest and tallest rectangle answered from the empty rectangle index
+    public static final int rect_limit = EmptyRectIndex.limit;
+
+    // height (at most rect_limit) of the tallest empty rectangle of the given width
+    // (1 to rect_limit) whose top left cell is (i, j)
+    public int emptyHeight(int i, int j, int width) {return empty_rects.height(i, j, width);}
+
+    // anchors (top left cells) in row-major order where a height x width rectangular
+    // building of the given type is buildable
+    public List<Cell> rectAnchors(int height, int width, Building.Type type) {
+	List<Cell> anchors = new ArrayList<Cell>();
+	for (int i=0; i+height<=side; i++)
+	    for (int j=0; j+width<=side; j++)
+		if (rectBuildable(i, j, height, width, type))
+		    anchors.add(land[i][j]);
+	return anchors;
+    }
+
+    // the anchor of rectAnchors() whose rectangle touches the most occupied or off-board
+    // cells (the first one in row-major order on ties), null if there is none
+    public Cell bestRectAnchor(int height, int width, Building.Type type) {
+	Cell best = null;
+	int best_contact = -1;
+	for (int i=0; i+height<=side; i++)
+	    for (int j=0; j+width<=side; j++)
+		if (rectBuildable(i, j, height, width, type)) {
+		    int contact = rimSum(occupied_neighbors, i, j, height, width);
+		    if (contact > best_contact) {
+			best_contact = contact;
+			best = land[i][j];
+		    }
+		}
+	return best;
+    }
+
+    private boolean rectBuildable(int i, int j, int height, int width, Building.Type type) {
+	if (height < 1 || width < 1)
+	    return false;
+	if (height <= rect_limit && width <= rect_limit) {
+	    if (empty_rects.height(i, j, width) < height)
+		return false;
+	} else if (!isEmptyRect(i, j, i+height-1, j+width-1))
+	    return false;
+	// only the rim of an empty rectangle can touch a building of the other type
+	Cell.Type forbidden = type == Building.Type.RESIDENCE ? Cell.Type.FACTORY : Cell.Type.RESIDENCE;
+	return rimSum(type_neighbors[forbidden.ordinal()], i, j, height, width) == 0;
+    }
+
+    // sum of a per-cell grid over the cells on the rim of a rectangle
+    private int rimSum(byte[] grid, int i, int j, int height, int width) {
+	int sum = 0;
+	for (int c=j; c<j+width; c++) {
+	    sum += grid[i*side + c];
+	    if (height > 1) sum += grid[(i+height-1)*side + c];
+	}
+	for (int r=i+1; r<i+height-1; r++) {
+	    sum += grid[r*side + j];
+	    if (width > 1) sum += grid[r*side + j+width-1];
+	}
+	return sum;
+    }
+
+    // number of cells built so far, increases with every change of the land
+    public int version() {return journal.size();}
+
+    // cells built since the given version in build order, each with its new type
+    public List<Cell> changesSince(int version) {
+	if (version < 0 || version > journal.size())
+	    throw new IllegalArgumentException("Unknown land version: " + version);
+	return Collections.unmodifiableList(journal.subList(version, journal.size()));
+    }
+
+    // bounding box {min_i, min_j, max_i, max_j} of the cells built since the given version
+    // null if nothing changed
+    public int[] dirtyBounds(int version) {
+	List<Cell> changes = changesSince(version);
+	if (changes.isEmpty()) return null;
+	int[] box = new int[] {side, side, -1, -1};
+	for (Cell q : changes) {
+	    box[0] = Math.min(box[0], q.i);
+	    box[1] = Math.min(box[1], q.j);
+	    box[2] = Math.max(box[2], q.i);
+	    box[3] = Math.max(box[3], q.j);
+	}
+	return box;
+    }
+
+    // read-only view (not a copy) of the road network including the border
+    // cells are re-indexed by +1 so that the border is at rows/columns 0 and side+1
+    public Set<Cell> roadNetwork() {return road_view;}
+
+    // check if a cell (board coordinates) is road or border
+    public boolean isRoad(int i, int j) {return road_network.contains(new Cell(i+1,j+1));}
+
+    // check if the road network stays connected to the border after building the given roads (board coordinates)
+    public boolean roadsConnected(Set<Cell> roads) {
+	int n = side + 2;
+	boolean[][] open = new boolean[n][n];
+	int count = 0;
+	for (Cell p : road_network)
+	    if (!open[p.i][p.j]) {
+		open[p.i][p.j] = true;
+		count++;
+	    }
+	for (Cell q : roads) {
+	    if (q.i >= side || q.j >= side)
+		return false;
+	    if (!open[q.i+1][q.j+1]) {
+		open[q.i+1][q.j+1] = true;
+		count++;
+	    }
+	}
+	// flood fill from the top left corner of the border
+	int[] stack = new int[count];
+	int top = 0;
+	stack[top++] = 1;
+	open[0][1] = false;
+	int reached = 1;
+	while (top > 0) {
+	    int x = stack[--top];
+	    int i = x / n, j = x % n;
+	    if (i > 0 && open[i-1][j]) {open[i-1][j] = false; stack[top++] = x - n; reached++;}
+	    if (i < n-1 && open[i+1][j]) {open[i+1][j] = false; stack[top++] = x + n; reached++;}
+	    if (j > 0 && open[i][j-1]) {open[i][j-1] = false; stack[top++] = x - 1; reached++;}
+	    if (j < n-1 && open[i][j+1]) {open[i][j+1] = false; stack[top++] = x + 1; reached++;}
+	}
+	return reached == count;
     }
 
     // check if a cell belongs to a pond or field respectively
@@ -84,13 +336,29 @@ public class Land {
     // functions for simulator to build stuff
     protected void buildWater(Cell q) {
 	land[q.i][q.j] = land[q.i][q.j].buildWater();
+	mark(land[q.i][q.j]);
     }
     protected void buildRoad(Cell q) {
 	road_network.add(new Cell(q.i+1,q.j+1)); // re-index to allow borders
 	land[q.i][q.j] = land[q.i][q.j].buildRoad();
+	mark(land[q.i][q.j]);
     }
     protected void buildPark(Cell q) {
 	land[q.i][q.j] = land[q.i][q.j].buildPark();
+	mark(land[q.i][q.j]);
+    }
+    // build a cell as it was built on another copy of the land (in the same order,
+    // so that versions and changes match): a player in another JVM sees the game so
+    void replay(Cell q) {
+	switch (q.type) {
+	case ROAD: buildRoad(q); return;
+	case WATER: buildWater(q); return;
+	case PARK: buildPark(q); return;
+	case RESIDENCE: land[q.i][q.j] = land[q.i][q.j].buildResidence(); break;
+	case FACTORY: land[q.i][q.j] = land[q.i][q.j].buildFactory(); break;
+	default: throw new IllegalArgumentException("Cannot build an empty cell");
+	}
+	mark(land[q.i][q.j]);
     }
     protected boolean validateRoads() {
 	return Cell.isConnected(road_network,side+2);
@@ -107,6 +375,7 @@ public class Land {
 		land[p.i+q.i][p.j+q.j] = land[p.i + q.i][p.j + q.j].buildResidence();
 	    else
 		throw new IllegalArgumentException("Building type not specified.");
+	    mark(land[p.i+q.i][p.j+q.j]);
 	    score += 1;	    
 	}
 	boolean existsRoad = false;
@@ -153,6 +422,145 @@ public class Land {
 	return score;
     }
 
-    
+    // score the simulator would award for the move, without changing the land
+    // 0 for a rejected request and -1 for a move the simulator would not accept
+    public int previewScore(Move move) {
+	return previewScores(Collections.singletonList(move))[0];
+    }
+
+    // scores of many candidate moves against the current land (see previewScore)
+    // the moves are evaluated independently, each one as if it was the only one
+    public int[] previewScores(List<Move> moves) {
+	// ponds and fields of the current land are shared by all candidates
+	boolean[][] pond = groups(Cell.Type.WATER);
+	boolean[][] field = groups(Cell.Type.PARK);
+	Cell.Type[][] shadow = new Cell.Type[side][side];
+	List<Cell> touched = new ArrayList<Cell>();
+	int[] scores = new int[moves.size()];
+	int m = 0;
+	for (Move move : moves) {
+	    try {
+		scores[m++] = previewScore(move, shadow, touched, pond, field);
+	    } finally {
+		for (Cell q : touched)
+		    shadow[q.i][q.j] = null;
+		touched.clear();
+	    }
+	}
+	return scores;
+    }
 
+    // same steps as the simulator: water, parks and roads first, then the building
+    private int previewScore(Move move, Cell.Type[][] shadow, List<Cell> touched,
+			     boolean[][] pond, boolean[][] field) {
+	if (!move.accept) return 0;
+	Building[] rotations = move.request.rotations();
+	if (move.rotation < 0 || move.rotation >= rotations.length)
+	    return -1;
+	Building building = rotations[move.rotation];
+	Cell q = move.location;
+	boolean new_water = move.water != null && !move.water.isEmpty();
+	boolean new_park = move.park != null && !move.park.isEmpty();
+	if (!shadowBuild(move.water, Cell.Type.WATER, shadow, touched) ||
+	    !shadowBuild(move.park, Cell.Type.PARK, shadow, touched) ||
+	    !shadowBuild(move.road, Cell.Type.ROAD, shadow, touched))
+	    return -1;
+	if (move.road != null && !roadsConnected(move.road))
+	    return -1;
+	// check if building can be built on the shadowed land
+	Cell.Type other = building.type == Building.Type.RESIDENCE ? Cell.Type.RESIDENCE : Cell.Type.FACTORY;
+	Cell.Type forbidden = building.type == Building.Type.RESIDENCE ? Cell.Type.FACTORY : Cell.Type.RESIDENCE;
+	for (Cell p : building) {
+	    int i = p.i + q.i, j = p.j + q.j;
+	    if (i < 0 || i >= side || j < 0 || j >= side || type(shadow, i, j) != Cell.Type.EMPTY)
+		return -1;
+	    for (Cell x : land[i][j].neighbors(side))
+		if (land[x.i][x.j].type == forbidden)
+		    return -1;
+	}
+	int score = 0;
+	for (Cell p : building) {
+	    shadow[p.i+q.i][p.j+q.j] = other;
+	    touched.add(land[p.i+q.i][p.j+q.j]);
+	    score += 1;
+	}
+	// road, pond and field next to the building
+	boolean exists_road = false;
+	boolean next_to_pond = false;
+	boolean next_to_field = false;
+	for (Cell p : building)
+	    for (Cell a : land[p.i+q.i][p.j+q.j].neighbors(side)) {
+		if (a.i == 0 || a.i == side-1 || a.j == 0 || a.j == side-1)
+		    exists_road = true;
+		Cell.Type t = type(shadow, a.i, a.j);
+		if (t == Cell.Type.ROAD)
+		    exists_road = true;
+		else if (t == Cell.Type.WATER && !next_to_pond)
+		    next_to_pond = pond[a.i][a.j] || (new_water && isGroup(shadow, a.i, a.j, t));
+		else if (t == Cell.Type.PARK && !next_to_field)
+		    next_to_field = field[a.i][a.j] || (new_park && isGroup(shadow, a.i, a.j, t));
+	    }
+	if (!exists_road)
+	    return -1;
+	if (next_to_pond) score += 2;
+	if (next_to_field) score += 2;
+	return score;
+    }
+
+    // build cells of one type on the shadow of the land
+    private boolean shadowBuild(Set<Cell> cells, Cell.Type t, Cell.Type[][] shadow, List<Cell> touched) {
+	if (cells == null) return true;
+	for (Cell q : cells) {
+	    if (q.i >= side || q.j >= side || type(shadow, q.i, q.j) != Cell.Type.EMPTY)
+		return false;
+	    shadow[q.i][q.j] = t;
+	    touched.add(land[q.i][q.j]);
+	}
+	return true;
+    }
+
+    private Cell.Type type(Cell.Type[][] shadow, int i, int j) {
+	Cell.Type t = shadow[i][j];
+	return t != null ? t : land[i][j].type;
+    }
+
+    // check if a cell belongs to a group of at least 4 cells of its type on the shadowed land
+    private boolean isGroup(Cell.Type[][] shadow, int i, int j, Cell.Type t) {
+	Set<Cell> group = new HashSet<Cell>();
+	Stack<Cell> stack = new Stack<Cell>();
+	group.add(land[i][j]);
+	stack.push(land[i][j]);
+	while (!stack.isEmpty()) {
+	    if (group.size() >= 4)
+		return true;
+	    for (Cell p : stack.pop().neighbors(side))
+		if (type(shadow, p.i, p.j) == t && group.add(land[p.i][p.j]))
+		    stack.push(land[p.i][p.j]);
+	}
+	return group.size() >= 4;
+    }
+
+    // mark all cells of the land that belong to groups of at least 4 cells of a type
+    private boolean[][] groups(Cell.Type t) {
+	boolean[][] in_group = new boolean[side][side];
+	boolean[][] visited = new boolean[side][side];
+	List<Cell> component = new ArrayList<Cell>();
+	for (int i = 0; i < side; i++)
+	    for (int j = 0; j < side; j++) {
+		if (visited[i][j] || land[i][j].type != t) continue;
+		component.clear();
+		visited[i][j] = true;
+		component.add(land[i][j]);
+		for (int k = 0; k < component.size(); k++)
+		    for (Cell p : component.get(k).neighbors(side))
+			if (!visited[p.i][p.j] && land[p.i][p.j].type == t) {
+			    visited[p.i][p.j] = true;
+			    component.add(land[p.i][p.j]);
+			}
+		if (component.size() >= 4)
+		    for (Cell p : component)
+			in_group[p.i][p.j] = true;
+	    }
+	return in_group;
+    }
 }
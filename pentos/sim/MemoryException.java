@@ -0,0 +1,12 @@
+package pentos.sim;
+
+// a player went over the memory budget of its game (see Timer.setMemoryBudget)
+class MemoryException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public MemoryException(String message)
+    {
+	super(message);
+    }
+}
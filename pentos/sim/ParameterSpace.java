@@ -0,0 +1,84 @@
+package pentos.sim;
+
+import java.util.*;
+
+// the tunables a player declares: a default value and a range for each
+// integer parameters are rounded whenever a value is drawn or clamped
+public final class ParameterSpace {
+
+    private final List <String> names = new ArrayList <String> ();
+    private final List <double[]> ranges = new ArrayList <double[]> ();
+    private final List <Boolean> integer = new ArrayList <Boolean> ();
+
+    public ParameterSpace add(String name, double value, double min, double max)
+    {
+	return add(name, value, min, max, false);
+    }
+
+    public ParameterSpace addInt(String name, int value, int min, int max)
+    {
+	return add(name, value, min, max, true);
+    }
+
+    private ParameterSpace add(String name, double value, double min, double max, boolean is_int)
+    {
+	if (names.contains(name))
+	    throw new IllegalArgumentException("Duplicate parameter: " + name);
+	if (!(min <= value && value <= max))
+	    throw new IllegalArgumentException("Default of " + name + " out of range");
+	names.add(name);
+	ranges.add(new double [] {value, min, max});
+	integer.add(is_int);
+	return this;
+    }
+
+    public int size() {return names.size();}
+    public String name(int k) {return names.get(k);}
+    public double value(int k) {return ranges.get(k)[0];}
+    public double min(int k) {return ranges.get(k)[1];}
+    public double max(int k) {return ranges.get(k)[2];}
+    public boolean isInteger(int k) {return integer.get(k);}
+
+    // the values the player uses when not tuned
+    public Parameters defaults()
+    {
+	double[] x = new double [size()];
+	for (int k = 0 ; k != x.length ; ++k)
+	    x[k] = value(k);
+	return parameters(x);
+    }
+
+    // a point drawn uniformly from the ranges
+    public Parameters sample(Random gen)
+    {
+	double[] x = new double [size()];
+	for (int k = 0 ; k != x.length ; ++k)
+	    x[k] = min(k) + gen.nextDouble() * (max(k) - min(k));
+	return parameters(x);
+    }
+
+    // the values of a point (in declaration order) clamped to the ranges
+    public Parameters parameters(double[] x)
+    {
+	if (x.length != size())
+	    throw new IllegalArgumentException("Expected " + size() + " values");
+	Map <String, Double> values = new LinkedHashMap <String, Double> ();
+	for (int k = 0 ; k != x.length ; ++k) {
+	    double v = Math.max(min(k), Math.min(max(k), x[k]));
+	    values.put(name(k), isInteger(k) ? Math.rint(v) : v);
+	}
+	return new Parameters(values);
+    }
+
+    // values of a space taken from given parameters, defaults for the missing ones
+    public Parameters complete(Parameters given)
+    {
+	double[] x = new double [size()];
+	for (int k = 0 ; k != x.length ; ++k)
+	    x[k] = given.has(name(k)) ? given.get(name(k)) : value(k);
+	for (String name : given.names())
+	    if (!names.contains(name))
+		throw new IllegalArgumentException("Unknown parameter: " + name);
+	return parameters(x);
+    }
+}
@@ -0,0 +1,86 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+
+// values of the tunables of a player by name, immutable
+// written and read as one "name=value" line per parameter
+public final class Parameters {
+
+    private final Map <String, Double> values;
+
+    public Parameters(Map <String, Double> values)
+    {
+	this.values = Collections.unmodifiableMap(new LinkedHashMap <String, Double> (values));
+    }
+
+    public boolean has(String name) {return values.containsKey(name);}
+
+    public double get(String name)
+    {
+	Double value = values.get(name);
+	if (value == null)
+	    throw new IllegalArgumentException("Missing parameter: " + name);
+	return value;
+    }
+
+    public int getInt(String name)
+    {
+	return (int) Math.round(get(name));
+    }
+
+    public Set <String> names() {return values.keySet();}
+
+    public static Parameters read(String path) throws IOException
+    {
+	Map <String, Double> values = new LinkedHashMap <String, Double> ();
+	BufferedReader reader = new BufferedReader(new FileReader(path));
+	try {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		line = line.trim();
+		if (line.isEmpty() || line.startsWith("#")) continue;
+		int eq = line.indexOf('=');
+		if (eq < 0)
+		    throw new IOException("Invalid parameter line: " + line);
+		try {
+		    values.put(line.substring(0, eq).trim(),
+			       Double.parseDouble(line.substring(eq + 1).trim()));
+		} catch (NumberFormatException e) {
+		    throw new IOException("Invalid parameter value: " + line);
+		}
+	    }
+	} finally {
+	    reader.close();
+	}
+	return new Parameters(values);
+    }
+
+    public void write(PrintStream out)
+    {
+	for (Map.Entry <String, Double> e : values.entrySet())
+	    out.println(e.getKey() + "=" + format(e.getValue()));
+    }
+
+    public String toString()
+    {
+	StringBuffer buf = new StringBuffer();
+	for (Map.Entry <String, Double> e : values.entrySet()) {
+	    if (buf.length() != 0) buf.append(", ");
+	    buf.append(e.getKey() + "=" + format(e.getValue()));
+	}
+	return buf.toString();
+    }
+
+    private static String format(double x)
+    {
+	return x == Math.rint(x) && Math.abs(x) < 1e15 ? Long.toString((long) x) : Double.toString(x);
+    }
+
+    public boolean equals(Object o)
+    {
+	return o instanceof Parameters && values.equals(((Parameters) o).values);
+    }
+
+    public int hashCode() {return values.hashCode();}
+}
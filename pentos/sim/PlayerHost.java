@@ -0,0 +1,183 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// a JVM hosting one player at a time for a PlayerPool, game after game
+// it reads requests on its standard input and writes replies on its standard
+// output (the players print to the standard error instead), all in binary:
+//   START <group> <cpu ms> <allocated bytes> <retained bytes>
+//                            a new game: load the player (in a loader of its own
+//                            so static state does not outlive the game) and init
+//                            it, with the memory budgets of the game (see Timer)
+//                            reply OK, TIMEOUT, MEMORY or ERROR <message>
+//   TURN <changes> <request> the cells built since the last turn (count, then
+//                            row, column and type of each) and the request (type,
+//                            count, row and column of each cell)
+//                            reply MOVE <move>, TIMEOUT, MEMORY or ERROR <message>
+//   END                      the game is over, reply OK
+// rows and columns are shorts, counts shorts and types bytes; a move is accept
+// then (if accepted) rotation, location and the road, water and park cells
+// after a timeout or a budget overrun the player may still be running, so the
+// pool ends the host
+class PlayerHost {
+
+    static final int START = 1, TURN = 2, END = 3;
+    static final int OK = 0, MOVE = 1, TIMEOUT = 2, ERROR = 3, MEMORY = 4;
+
+    private GameClassLoader loader = null;
+    private Timer timer = null;
+    private Player player = null;
+    private Land land = null;
+    private long cpu_time_ms = 0;
+
+    private void start(String group, long cpu_time_ms) throws Exception
+    {
+	end();
+	this.cpu_time_ms = cpu_time_ms;
+	loader = new GameClassLoader("pentos", Simulator.class.getClassLoader());
+	final Class <Player> player_class = Simulator.load_player(group, loader);
+	timer = new Timer();
+	timer.start();
+	player = timer.call(new Callable <Player> () {
+		public Player call() throws Exception
+		{
+		    return player_class.getDeclaredConstructor().newInstance();
+		}
+	    }, cpu_time_ms);
+	player.init();
+	land = new Land(Cell.default_land_side);
+    }
+
+    private Move turn(final Building request) throws Exception
+    {
+	long timeout_ms = 0;
+	if (cpu_time_ms > 0) {
+	    long timeout_ns = cpu_time_ms * 1000000 - timer.time();
+	    if (timeout_ns <= 0) throw new TimeoutException();
+	    timeout_ms = (timeout_ns / 1000000) + 1;
+	}
+	final Land land = this.land;
+	final Player player = this.player;
+	return timer.call(new Callable <Move> () {
+		public Move call() throws Exception
+		{
+		    return player.play(request, land);
+		}
+	    }, timeout_ms);
+    }
+
+    private void end() throws IOException
+    {
+	if (timer != null) timer.shutdown();
+	if (loader != null) loader.close();
+	timer = null;
+	loader = null;
+	player = null;
+	land = null;
+    }
+
+    static void writeCells(DataOutputStream out, Collection <Cell> cells) throws IOException
+    {
+	out.writeShort(cells.size());
+	for (Cell c : cells) {
+	    if (c.i != (short) c.i || c.j != (short) c.j)
+		throw new IllegalArgumentException("Invalid cell: " + c);
+	    out.writeShort(c.i);
+	    out.writeShort(c.j);
+	}
+    }
+
+    static Set <Cell> readCells(DataInputStream in) throws IOException
+    {
+	int n = in.readShort();
+	Set <Cell> cells = new HashSet <Cell> ();
+	for (int k = 0 ; k != n ; ++k)
+	    cells.add(new Cell(in.readShort(), in.readShort()));
+	return cells;
+    }
+
+    private static void writeMove(DataOutputStream out, Move move) throws IOException
+    {
+	// encode first, a player error must not leave half a reply
+	ByteArrayOutputStream buf = new ByteArrayOutputStream();
+	DataOutputStream data = new DataOutputStream(buf);
+	data.writeBoolean(move.accept);
+	if (move.accept) {
+	    data.writeByte(move.rotation);
+	    writeCells(data, Collections.singleton(move.location));
+	    writeCells(data, move.road);
+	    writeCells(data, move.water);
+	    writeCells(data, move.park);
+	}
+	out.writeByte(MOVE);
+	buf.writeTo(out);
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException
+    {
+	for (;;) {
+	    int op;
+	    try {
+		op = in.readByte();
+	    } catch (EOFException e) {
+		return;
+	    }
+	    boolean abandoned = false;
+	    try {
+		if (op == START) {
+		    String group = in.readUTF();
+		    long cpu_time_ms = in.readLong();
+		    Timer.setMemoryBudget(in.readLong(), in.readLong());
+		    start(group, cpu_time_ms);
+		    out.writeByte(OK);
+		} else if (op == TURN) {
+		    int changes = in.readShort();
+		    for (int k = 0 ; k != changes ; ++k)
+			land.replay(new Cell(in.readShort(), in.readShort(), Cell.Type.values()[in.readByte()]));
+		    Building.Type type = Building.Type.values()[in.readByte()];
+		    Set <Cell> cells = readCells(in);
+		    Building request = ShapeRegistry.intern(new Building(cells.toArray(new Cell [0]), type));
+		    Move move = turn(request);
+		    if (move == null)
+			throw new NullPointerException("No move");
+		    writeMove(out, move);
+		} else if (op == END) {
+		    end();
+		    out.writeByte(OK);
+		} else
+		    throw new IOException("Unknown request: " + op);
+	    } catch (TimeoutException e) {
+		out.writeByte(TIMEOUT);
+		abandoned = true;
+	    } catch (MemoryException e) {
+		System.err.println(e.getMessage());
+		out.writeByte(MEMORY);
+		abandoned = true;
+	    } catch (IOException e) {
+		throw e;
+	    } catch (Exception e) {
+		e.printStackTrace();
+		out.writeByte(ERROR);
+		out.writeUTF(String.valueOf(e));
+	    }
+	    out.flush();
+	    // the player may still be running
+	    if (abandoned) return;
+	}
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+	// the replies own the standard output
+	DataOutputStream out = new DataOutputStream
+	    (new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+	DataInputStream in = new DataInputStream
+	    (new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+	System.setOut(System.err);
+	new PlayerHost().serve(in, out);
+	out.flush();
+	System.exit(0);
+    }
+}
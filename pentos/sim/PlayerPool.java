@@ -0,0 +1,208 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+
+// plays games on player JVMs started ahead of time (see PlayerHost) instead of a
+// new JVM per game: the game runs here, the host only runs the player and gets
+// the cells built since its last turn with each request
+// a host is used for a number of games and then replaced, and at once after the
+// player timed out, the host died (out of memory or crashed) or stopped answering
+// (the wall clock watchdog), so that no game sees what a previous one left behind
+// or went over the memory budgets of the game (see Timer)
+// each game loads the player in a class loader of its own on the host: the player
+// classes are compiled again by the JIT every game, the simulator classes are not
+class PlayerPool {
+
+    // the exit code of a JVM ending on -XX:+ExitOnOutOfMemoryError
+    private static final int out_of_memory_exit = 3;
+
+    private static class Host {
+	final Process process;
+	final DataInputStream in;
+	final DataOutputStream out;
+	int games = 0;
+
+	Host(Process process)
+	{
+	    this.process = process;
+	    in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	    out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+	}
+    }
+
+    private final List <String> jvm_options;
+    private final File log;
+    private final int games_per_host;
+    private final long alloc_budget;
+    private final long heap_budget;
+    private final LinkedList <Host> idle = new LinkedList <Host> ();
+    private final Map <String, Class <Sequencer>> sequencers = new HashMap <String, Class <Sequencer>> ();
+    private final java.util.Timer watchdog = new java.util.Timer(true);
+
+    // start the hosts, the output of the players is appended to the log
+    // the memory budgets of the games are in megabytes, 0 for none
+    public PlayerPool(int hosts, int games_per_host, List <String> jvm_options,
+		      long alloc_budget, long heap_budget, File log) throws IOException
+    {
+	this.jvm_options = jvm_options;
+	this.alloc_budget = alloc_budget << 20;
+	this.heap_budget = heap_budget << 20;
+	this.log = log;
+	this.games_per_host = games_per_host;
+	for (int h = 0 ; h != hosts ; ++h)
+	    idle.add(spawn());
+    }
+
+    private Host spawn() throws IOException
+    {
+	List <String> command = new ArrayList <String> ();
+	command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	command.add("-XX:+ExitOnOutOfMemoryError");
+	command.addAll(jvm_options);
+	command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "pentos.sim.PlayerHost"));
+	ProcessBuilder builder = new ProcessBuilder(command);
+	builder.redirectError(ProcessBuilder.Redirect.appendTo(log));
+	return new Host(builder.start());
+    }
+
+    private synchronized Host take() throws IOException
+    {
+	return idle.isEmpty() ? spawn() : idle.removeFirst();
+    }
+
+    private synchronized void give(Host host) throws IOException
+    {
+	if (++host.games < games_per_host)
+	    idle.add(host);
+	else {
+	    host.out.close();
+	    idle.add(spawn());
+	}
+    }
+
+    // replace a host that cannot play another game
+    private synchronized void discard(Host host) throws IOException
+    {
+	host.process.destroy();
+	idle.add(spawn());
+    }
+
+    private synchronized Class <Sequencer> sequencer(String sequencer) throws Exception
+    {
+	Class <Sequencer> s_class = sequencers.get(sequencer);
+	if (s_class == null) {
+	    s_class = Simulator.load_sequencer(sequencer, new GameClassLoader("pentos", Simulator.class.getClassLoader()));
+	    sequencers.put(sequencer, s_class);
+	}
+	return s_class;
+    }
+
+    private static Tournament.Result result(int score, String status, long epoch)
+    {
+	return new Tournament.Result(score, status, (System.nanoTime() - epoch) / 1.0e9);
+    }
+
+    // play a game as Simulator does with --tournament: the score and "ok", the
+    // score so far and "timeout", -2 and "failed" if the player threw or made an
+    // invalid move, or -1 and "memory" if it went over a memory budget or ran its
+    // host out of memory
+    public Tournament.Result play(String player, String sequencer, long seed, long cpu_time_ms)
+	throws Exception
+    {
+	long epoch = System.nanoTime();
+	Sequencer generator = SequenceCache.get(sequencer, seed, sequencer(sequencer)).replay();
+	generator.init(seed);
+	final Host host = take();
+	// the host enforces the CPU time of the player, this catches a host that hangs
+	TimerTask kill = new TimerTask() {
+		public void run()
+		{
+		    host.process.destroy();
+		}
+	    };
+	watchdog.schedule(kill, cpu_time_ms > 0 ? 2 * cpu_time_ms + 60 * 1000 : 24 * 3600 * 1000);
+	int score = 0;
+	try {
+	    host.out.writeByte(PlayerHost.START);
+	    host.out.writeUTF(player);
+	    host.out.writeLong(cpu_time_ms);
+	    host.out.writeLong(alloc_budget);
+	    host.out.writeLong(heap_budget);
+	    host.out.flush();
+	    int reply = host.in.readByte();
+	    if (reply == PlayerHost.ERROR) host.in.readUTF();
+	    Land land = new Land(Cell.default_land_side);
+	    int version = 0;
+	    int rejects = 0;
+	    while (reply == PlayerHost.OK && rejects < 3) {
+		Building request = ShapeRegistry.intern(generator.next());
+		List <Cell> changes = land.changesSince(version);
+		version = land.version();
+		host.out.writeByte(PlayerHost.TURN);
+		host.out.writeShort(changes.size());
+		for (Cell c : changes) {
+		    host.out.writeShort(c.i);
+		    host.out.writeShort(c.j);
+		    host.out.writeByte(c.type.ordinal());
+		}
+		host.out.writeByte(request.type.ordinal());
+		List <Cell> cells = new ArrayList <Cell> ();
+		for (Cell c : request) cells.add(c);
+		PlayerHost.writeCells(host.out, cells);
+		host.out.flush();
+		reply = host.in.readByte();
+		if (reply == PlayerHost.ERROR) host.in.readUTF();
+		if (reply != PlayerHost.MOVE) break;
+		reply = PlayerHost.OK;
+		if (!host.in.readBoolean()) {
+		    rejects++;
+		    continue;
+		}
+		int rotation = host.in.readByte();
+		Cell location = PlayerHost.readCells(host.in).iterator().next();
+		Set <Cell> road = PlayerHost.readCells(host.in);
+		Set <Cell> water = PlayerHost.readCells(host.in);
+		Set <Cell> park = PlayerHost.readCells(host.in);
+		try {
+		    score += Simulator.build(land, request, new Move(true, request, location, rotation, road, water, park));
+		} catch (RuntimeException e) {
+		    // as Simulator, an invalid move fails the game
+		    reply = PlayerHost.ERROR;
+		    break;
+		}
+	    }
+	    if (reply == PlayerHost.TIMEOUT || reply == PlayerHost.MEMORY) {
+		// the player may still be running
+		kill.cancel();
+		discard(host);
+		return reply == PlayerHost.MEMORY ? result(-1, "memory", epoch) : result(score, "timeout", epoch);
+	    }
+	    host.out.writeByte(PlayerHost.END);
+	    host.out.flush();
+	    if (host.in.readByte() != PlayerHost.OK)
+		throw new IOException("Player host out of step");
+	    kill.cancel();
+	    give(host);
+	    return reply == PlayerHost.OK ? result(score, "ok", epoch) : result(-2, "failed", epoch);
+	} catch (IOException e) {
+	    // the host died or was killed by the watchdog
+	    boolean killed = !kill.cancel();
+	    host.process.destroy();
+	    int exit = host.process.waitFor();
+	    discard(host);
+	    if (killed) return result(score, "timeout", epoch);
+	    if (exit == out_of_memory_exit) return result(-1, "memory", epoch);
+	    return result(-2, "failed", epoch);
+	}
+    }
+
+    // end the hosts
+    public synchronized void close()
+    {
+	watchdog.cancel();
+	for (Host host : idle)
+	    host.process.destroy();
+	idle.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+
+// the results of a tournament, written ahead as each game ends so that a
+// tournament restarted after a crash only plays the games it has no result for
+// one "player,sequencer,seed,code,score,status,seconds" line per game, where
+// code is a hash of the sources the game depends on (see Tournament.code): a
+// game whose code changed since is played again. every line is forced to disk before the
+// next game is reported, a torn last line (a crash while writing) is ignored
+// and the last line of a game wins when it was played more than once
+class ResultJournal {
+
+    public static final String header = "player,sequencer,seed,code,score,status,seconds";
+
+    private final Map <String, String> status = new HashMap <String, String> ();
+    private final FileOutputStream file;
+    private final PrintStream out;
+
+    public ResultJournal(String path) throws IOException
+    {
+	File f = new File(path);
+	boolean torn = false;
+	if (f.exists()) {
+	    RandomAccessFile raf = new RandomAccessFile(f, "r");
+	    try {
+		if (raf.length() > 0) {
+		    raf.seek(raf.length() - 1);
+		    torn = raf.read() != '\n';
+		}
+	    } finally {
+		raf.close();
+	    }
+	    List <String> lines = new ArrayList <String> ();
+	    BufferedReader reader = new BufferedReader(new FileReader(f));
+	    try {
+		String line;
+		while ((line = reader.readLine()) != null)
+		    lines.add(line);
+	    } finally {
+		reader.close();
+	    }
+	    if (torn) lines.remove(lines.size() - 1);
+	    for (String line : lines) {
+		String[] field = line.split(",");
+		if (field.length == 7 && !line.equals(header))
+		    status.put(key(field[0], field[1], field[2], field[3]), field[5]);
+	    }
+	}
+	boolean empty = !f.exists() || f.length() == 0;
+	file = new FileOutputStream(f, true);
+	out = new PrintStream(file);
+	if (torn) out.println();
+	if (empty) out.println(header);
+	sync();
+    }
+
+    private static String key(String player, String sequencer, String seed, String code)
+    {
+	return player + "," + sequencer + "," + seed + "," + code;
+    }
+
+    // whether the game has a result (a timeout is a result, a failure is not)
+    public synchronized boolean done(String player, String sequencer, long seed, String code)
+    {
+	String s = status.get(key(player, sequencer, Long.toString(seed), code));
+	return s != null && !s.equals("failed");
+    }
+
+    public synchronized void append(String player, String sequencer, long seed, String code,
+				    int score, String result, double seconds) throws IOException
+    {
+	out.println(key(player, sequencer, Long.toString(seed), code) + "," + score + "," + result +
+		    "," + String.format(Locale.ROOT, "%.1f", seconds));
+	sync();
+	status.put(key(player, sequencer, Long.toString(seed), code), result);
+    }
+
+    private void sync() throws IOException
+    {
+	out.flush();
+	if (out.checkError())
+	    throw new IOException("Cannot write the result journal");
+	file.getFD().sync();
+    }
+
+    public synchronized void close()
+    {
+	out.close();
+    }
+}
@@ -0,0 +1,94 @@
+package pentos.sim;
+
+import java.util.*;
+
+// materializes the request stream of a (sequencer, seed) pair once and
+// replays it to every game using the same pair
+// the stream is stored as an array of fixed form ids of the shape registry,
+// so all games see the very same interned Building instances
+class SequenceCache {
+
+    // all cached streams by sequencer name and seed
+    private static final Map <String, SequenceCache> caches = new HashMap <String, SequenceCache> ();
+
+    // the sequencer generating the stream on demand
+    private final Sequencer generator;
+
+    // fixed form ids of the requests generated so far
+    private int[] ids = new int [256];
+    private int length = 0;
+
+    private SequenceCache(Sequencer generator)
+    {
+	this.generator = generator;
+    }
+
+    // get the cache of a sequencer and seed (the stream of a null seed is not reproducible)
+    public static SequenceCache get(String sequencer, Long seed, Class <Sequencer> sequencer_class)
+	throws ReflectiveOperationException
+    {
+	if (seed == null)
+	    throw new IllegalArgumentException("Cannot cache sequence without seed");
+	String key = sequencer + ":" + seed;
+	synchronized (caches) {
+	    SequenceCache cache = caches.get(key);
+	    if (cache == null) {
+		Sequencer generator = sequencer_class.getDeclaredConstructor().newInstance();
+		generator.init(seed);
+		cache = new SequenceCache(generator);
+		caches.put(key, cache);
+	    }
+	    return cache;
+	}
+    }
+
+    // drop all cached streams
+    public static void clear()
+    {
+	synchronized (caches) {
+	    caches.clear();
+	}
+    }
+
+    // the n-th request of the stream
+    public Building request(int n)
+    {
+	return ShapeRegistry.form(id(n));
+    }
+
+    // the fixed form id of the n-th request of the stream
+    public synchronized int id(int n)
+    {
+	while (length <= n) {
+	    if (length == ids.length)
+		ids = Arrays.copyOf(ids, ids.length * 2);
+	    ids[length++] = ShapeRegistry.id(generator.next());
+	}
+	return ids[n];
+    }
+
+    // number of requests materialized so far
+    public synchronized int length()
+    {
+	return length;
+    }
+
+    // a sequencer replaying the cached stream from the start
+    public Sequencer replay()
+    {
+	return new Sequencer() {
+
+		private int next = 0;
+
+		public void init(Long seed)
+		{
+		    next = 0;
+		}
+
+		public Building next()
+		{
+		    return request(next++);
+		}
+	    };
+    }
+}
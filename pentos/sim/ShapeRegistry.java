@@ -0,0 +1,211 @@
+package pentos.sim;
+
+import java.util.*;
+
+// global table of canonical building shapes
+// every distinct orientation (fixed form) of a building gets a small id and a
+// single interned Building instance, so interned buildings can be compared by
+// identity and players can key per-shape caches by id instead of by cell sets
+public class ShapeRegistry {
+
+    // interned buildings by fixed form id
+    private static final List <Building> forms = new ArrayList <Building> ();
+
+    // fixed form ids by type and sorted cells
+    private static final Map <String, Integer> form_ids = new HashMap <String, Integer> ();
+
+    // per fixed form: shape id, rotation within the shape, footprint, size
+    private static int[] shape_of = new int [64];
+    private static int[] rotation_of = new int [64];
+    private static long[] footprint_of = new long [64];
+    private static int[] height_of = new int [64];
+    private static int[] width_of = new int [64];
+
+    // per shape: fixed form ids of its rotations in the order of Building.rotations()
+    private static final List <int[]> shape_rotations = new ArrayList <int[]> ();
+
+    // side of the square in which footprint bitmasks are laid out
+    public static final int footprint_side = 8;
+
+    private ShapeRegistry() {}
+
+    // the interned instance of the building (same cells in the same orientation and same type)
+    public static Building intern(Building building)
+    {
+	return form(id(building));
+    }
+
+    // the fixed form id of the building (registering it and its rotations if new)
+    public static int id(Building building)
+    {
+	int id = building.form_id;
+	if (id >= 0) return id;
+	String key = key(building);
+	synchronized (forms) {
+	    Integer known = form_ids.get(key);
+	    if (known != null) return known;
+	    // register all rotations of the shape using the ring of the building
+	    Building[] rotations = building.rotations();
+	    int shape = shape_rotations.size();
+	    int[] ids = new int [rotations.length];
+	    for (int r = 0 ; r != rotations.length ; ++r) {
+		Building rotation = rotations[r];
+		int form = forms.size();
+		grow(form + 1);
+		forms.add(rotation);
+		form_ids.put(r == 0 ? key : key(rotation), form);
+		shape_of[form] = shape;
+		rotation_of[form] = r;
+		footprint_of[form] = footprint(rotation);
+		int height = 0;
+		int width = 0;
+		for (Cell p : rotation) {
+		    if (height <= p.i) height = p.i + 1;
+		    if (width <= p.j) width = p.j + 1;
+		}
+		height_of[form] = height;
+		width_of[form] = width;
+		rotation.form_id = form;
+		rotation.shape_id = shape;
+		ids[r] = form;
+	    }
+	    shape_rotations.add(ids);
+	    return ids[0];
+	}
+    }
+
+    // the shape id of the building (the same for all its rotations)
+    public static int shapeId(Building building)
+    {
+	int shape = building.shape_id;
+	if (shape >= 0) return shape;
+	return shapeOf(id(building));
+    }
+
+    // interned building of a fixed form id
+    public static Building form(int id)
+    {
+	synchronized (forms) {
+	    return forms.get(id);
+	}
+    }
+
+    // number of fixed forms and shapes registered so far
+    public static int forms()
+    {
+	synchronized (forms) {
+	    return forms.size();
+	}
+    }
+
+    public static int shapes()
+    {
+	synchronized (forms) {
+	    return shape_rotations.size();
+	}
+    }
+
+    // shape id of a fixed form
+    public static int shapeOf(int id)
+    {
+	synchronized (forms) {
+	    check(id);
+	    return shape_of[id];
+	}
+    }
+
+    // index of a fixed form within the rotations of its shape
+    public static int rotationOf(int id)
+    {
+	synchronized (forms) {
+	    check(id);
+	    return rotation_of[id];
+	}
+    }
+
+    // fixed form ids of the rotations of a shape (a copy)
+    public static int[] rotations(int shape)
+    {
+	synchronized (forms) {
+	    return shape_rotations.get(shape).clone();
+	}
+    }
+
+    // fixed form id of rotation r of the given fixed form (as in rotations()[r])
+    public static int rotate(int id, int r)
+    {
+	synchronized (forms) {
+	    check(id);
+	    int[] ids = shape_rotations.get(shape_of[id]);
+	    return ids[(rotation_of[id] + r) % ids.length];
+	}
+    }
+
+    // bit (i * footprint_side + j) is set for every cell (i, j) of the fixed form
+    // zero if the form does not fit in a footprint_side x footprint_side square
+    public static long footprint(int id)
+    {
+	synchronized (forms) {
+	    check(id);
+	    return footprint_of[id];
+	}
+    }
+
+    // bounding box of a fixed form
+    public static int height(int id)
+    {
+	synchronized (forms) {
+	    check(id);
+	    return height_of[id];
+	}
+    }
+
+    public static int width(int id)
+    {
+	synchronized (forms) {
+	    check(id);
+	    return width_of[id];
+	}
+    }
+
+    private static void check(int id)
+    {
+	if (id < 0 || id >= forms.size())
+	    throw new IllegalArgumentException("Unknown shape id: " + id);
+    }
+
+    private static void grow(int n)
+    {
+	if (n <= shape_of.length) return;
+	int length = shape_of.length * 2;
+	shape_of = Arrays.copyOf(shape_of, length);
+	rotation_of = Arrays.copyOf(rotation_of, length);
+	footprint_of = Arrays.copyOf(footprint_of, length);
+	height_of = Arrays.copyOf(height_of, length);
+	width_of = Arrays.copyOf(width_of, length);
+    }
+
+    private static long footprint(Building building)
+    {
+	long mask = 0;
+	for (Cell p : building) {
+	    if (p.i >= footprint_side || p.j >= footprint_side)
+		return 0;
+	    mask |= 1L << (p.i * footprint_side + p.j);
+	}
+	return mask;
+    }
+
+    // type and sorted cells of the orientation
+    private static String key(Building building)
+    {
+	List <Cell> cells = new ArrayList <Cell> ();
+	for (Cell p : building)
+	    cells.add(p);
+	Collections.sort(cells);
+	StringBuffer buf = new StringBuffer(building.type.toString());
+	for (Cell p : cells)
+	    buf.append(";" + p.i + "," + p.j);
+	return buf.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package pentos.sim;
+
+import java.util.*;
+import java.util.function.*;
+
+// values a player computes once per JVM and shares with all its later games
+// the player classes are loaded again for every game (see GameClassLoader), so
+// their static fields start over each game: what must outlive the game goes here
+// a value must only hold simulator and Java objects (an object of a player class
+// would keep the loader of its game alive and is of another class in the next
+// game), must not be changed once shared and must not depend on the parameters
+// of the game (see Tunable)
+public class SharedCache {
+
+    // all shared values by class and name
+    private static final Map <String, Object> values = new HashMap <String, Object> ();
+
+    // the value shared under this name by the games of the class, computed by the
+    // first game asking for it
+    public static <T> T get(Class <?> owner, String name, Supplier <T> compute)
+    {
+	String key = owner.getName() + ":" + name;
+	synchronized (values) {
+	    @SuppressWarnings("unchecked")
+		T value = (T) values.get(key);
+	    if (value == null) {
+		value = compute.get();
+		if (value.getClass().getClassLoader() instanceof GameClassLoader)
+		    throw new IllegalArgumentException("Cannot share instance of " + value.getClass().getName());
+		values.put(key, value);
+	    }
+	    return value;
+	}
+    }
+}
@@ -25,6 +25,11 @@ class Simulator {
 	String sequencer = "tailheavy";
 	long cpu_time_ms = 300 * 1000;
 	String tournament_path = null;
+	String parameters_path = null;
+	Parameters parameters = null;
+	long alloc_budget = 0;
+	long heap_budget = 0;
+	GameClassLoader loader = null;
 	// long[] timeout = new long [] {1000, 10000, 1000};
 	long gui_refresh = 250;
 	try {
@@ -54,14 +59,30 @@ class Simulator {
 		    if (++a >= args.length)
 			throw new IllegalArgumentException("Missing tournament file");
 		    tournament_path = args[a];
+		} else if (args[a].equals("-p") || args[a].equals("--parameters")) {
+		    if (++a >= args.length)
+			throw new IllegalArgumentException("Missing parameters file");
+		    parameters_path = args[a];
+		} else if (args[a].equals("--alloc-budget") || args[a].equals("--heap-budget")) {
+		    // megabytes allocated by the player, megabytes of heap retained
+		    if (++a >= args.length)
+			throw new IllegalArgumentException("Missing memory budget");
+		    long bytes = Long.parseLong(args[a]) << 20;
+		    if (args[a - 1].equals("--alloc-budget")) alloc_budget = bytes;
+		    else heap_budget = bytes;
 		} else if (args[a].equals("--gui")) gui = true;
 		else if (args[a].equals("--gui-mrc"))
 		    gui = gui_manual_refresh_on_cutter = true;
 		else if (args[a].equals("--verbose"))
 		    log = true;
 		else throw new IllegalArgumentException("Unknown argument: " + args[a]);
-	    g_class = load_player(group);
-	    s_class = load_sequencer(sequencer);
+	    // sequencers may outlive the game in the sequence cache
+	    loader = new GameClassLoader(root, Simulator.class.getClassLoader());
+	    g_class = load_player(group, loader);
+	    s_class = load_sequencer(sequencer, new GameClassLoader(root, Simulator.class.getClassLoader()));
+	    if (parameters_path != null)
+		parameters = Parameters.read(parameters_path);
+	    Timer.setMemoryBudget(alloc_budget, heap_budget);
 	} catch (Exception e) {
 	    System.err.println("Exception during setup: " + e.getMessage());
 	    e.printStackTrace();
@@ -84,10 +105,13 @@ class Simulator {
 	}
 	AtomicInteger score = new AtomicInteger(0);
 	boolean timeout = false;
+	String memory = null;
 	try {
 	    timeout = play(group, g_class, sequencer, s_class,
 			   gui, seed, gui_manual_refresh_on_cutter,
-			   gui_refresh, cpu_time_ms, score);
+			   gui_refresh, cpu_time_ms, parameters, score);
+	} catch (MemoryException e) {
+	    memory = e.getMessage();
 	} catch (Exception e) {
 	    if (tournament_path != null) throw e;
 	    System.err.println("Exception during play: " + e.getMessage());
@@ -95,34 +119,90 @@ class Simulator {
 	    System.err.println("Exiting the simulator ...");
 	    System.exit(1);
 	}
+	loader.close();
 	if (tournament_path == null) {
 	    System.err.println("Player " + group + " scored " + score.get());
 	    if (timeout) 
 		System.err.println("Player timed out!");
+	    if (memory != null)
+		System.err.println("Player went over its memory budget! " + memory);
 	} else {
+	    // as in pentos/RESULTS, -1 for a player out of memory
 	    PrintStream file = new PrintStream(new FileOutputStream(tournament_path, true));
-	    file.println(group + "," + score.get() + "," + (timeout == true ? "yes" : "no"));			 
+	    if (memory != null)
+		file.println(group + ",-1,memory");
+	    else
+		file.println(group + "," + score.get() + "," + (timeout == true ? "yes" : "no"));			 
 	    file.close();
 	}
 	System.exit(0);
     }
 
-    private static boolean play(String group,
-			    Class <Player> g_class,
-			    String sequencer,
-			    Class <Sequencer> s_class,
-			    boolean gui,
-			    Long seed,
-			    boolean gui_manual_refresh_on_cutter,
-			    long gui_refresh,
-			    long cpu_time_ms,
-			    AtomicInteger score) throws Exception
+    // play one game, the parameters (if not null) tune the player
+    // returns whether the player timed out, the score is updated as the game goes
+    static boolean play(String group,
+			Class <Player> g_class,
+			String sequencer,
+			Class <Sequencer> s_class,
+			boolean gui,
+			Long seed,
+			boolean gui_manual_refresh_on_cutter,
+			long gui_refresh,
+			long cpu_time_ms,
+			Parameters parameters,
+			AtomicInteger score) throws Exception
+    {
+	// the timer thread ends with the game, as the tuner plays many games per process
+	Timer timer = new Timer();
+	timer.start();
+	try {
+	    return play(timer, group, g_class, sequencer, s_class, gui, seed,
+			gui_manual_refresh_on_cutter, gui_refresh, cpu_time_ms,
+			parameters, score);
+	} finally {
+	    timer.shutdown();
+	}
+    }
+
+    // play a seeded game of a player loaded on its own, for tools running many games
+    // returns the score (so far if the player timed out, which is counted in timeouts)
+    static int play(String group,
+		    String sequencer,
+		    Class <Sequencer> s_class,
+		    long seed,
+		    long cpu_time_ms,
+		    Parameters parameters,
+		    AtomicInteger timeouts) throws Exception
+    {
+	GameClassLoader loader = new GameClassLoader(root, Simulator.class.getClassLoader());
+	try {
+	    Class <Player> g_class = load_player(group, loader);
+	    AtomicInteger score = new AtomicInteger(0);
+	    if (play(group, g_class, sequencer, s_class, false, seed, false, -1,
+		     cpu_time_ms, parameters, score))
+		timeouts.incrementAndGet();
+	    return score.get();
+	} finally {
+	    loader.close();
+	}
+    }
+
+    private static boolean play(Timer timer,
+				String group,
+				Class <Player> g_class,
+				String sequencer,
+				Class <Sequencer> s_class,
+				boolean gui,
+				Long seed,
+				boolean gui_manual_refresh_on_cutter,
+				long gui_refresh,
+				long cpu_time_ms,
+				Parameters parameters,
+				AtomicInteger score) throws Exception
     {
 	int numRejects = 0;
 	List <Move> moves = gui ? new ArrayList <Move> () : null;
 	// initialize player
-	Timer timer = new Timer();
-	timer.start();
 	final Class <Player> player_class = g_class;
 	final Class <Sequencer> sequencer_class = s_class;
 	Player player;
@@ -136,8 +216,17 @@ class Simulator {
 		    }
 		}, cpu_time_ms);
 	} catch (TimeoutException e) {return true;}
+	if (parameters != null) {
+	    if (!(player instanceof Tunable))
+		throw new IllegalArgumentException("Player " + group + " has no tunables");
+	    Tunable tunable = (Tunable) player;
+	    tunable.tune(tunable.space().complete(parameters));
+	}
 
-	try {
+	// seeded streams are reproducible so they are shared across games
+	if (seed != null)
+	    generator = SequenceCache.get(sequencer, seed, sequencer_class).replay();
+	else try {
 	    generator = timer.call(new Callable <Sequencer> () {
 
 		    public Sequencer call() throws Exception
@@ -178,8 +267,8 @@ class Simulator {
 	if (log)
 	    System.err.println("Construction begins ...");
 	do {
-	    // get next build request
-	    Building request = generator.next();
+	    // get next build request (interned so that players can compare shapes by identity)
+	    Building request = ShapeRegistry.intern(generator.next());
 	    // call the play method of player
 	    long timeout_ms = 0;
 	    if (cpu_time_ms > 0) {
@@ -202,37 +291,13 @@ class Simulator {
 		    System.err.println("Player " + group + " rejected building request. " + numRejects + " of 3 rejected.");
 	    }
 	    else {
-		Building[] building_rotations = request.rotations();
-		// check if rotation is valid
-		if (move.rotation < 0 || move.rotation >= building_rotations.length)
-		    throw new RuntimeException("Invalid building rotation");
-		Building rotated_building = building_rotations[move.rotation];
-		// play move. First build auxiliary structures.
-		Iterator<Cell> water_cells = move.water.iterator();
-		Iterator<Cell> park_cells = move.park.iterator();
-		Iterator<Cell> road_cells = move.road.iterator();
-		String roadCells = "";		
-		while (water_cells.hasNext())
-		    land.buildWater(water_cells.next());
-		while (park_cells.hasNext())
-		    land.buildPark(park_cells.next());
-		while (road_cells.hasNext()){
-		    Cell x = road_cells.next();
-		    roadCells = roadCells + " " + x.i + "," + x.j;
-		}
-		road_cells = move.road.iterator();
-		while (road_cells.hasNext()) 
-		    land.buildRoad(road_cells.next());
-		if (!land.validateRoads()) 
-		    throw new RuntimeException("Roads not connected");
-		String buildingCells = "";
-		for (Cell p : rotated_building)
-		    buildingCells = buildingCells + " (" + (p.i+move.location.i) + "," + (p.j+move.location.j) + ")";
-		int delta = land.build(rotated_building, move.location);
-		if (delta == -1)
-		    throw new RuntimeException("Invalid building placement");
-		if (log)
+		int delta = build(land, request, move);
+		if (log) {
+		    String buildingCells = "";
+		    for (Cell p : request.rotations()[move.rotation])
+			buildingCells = buildingCells + " (" + (p.i+move.location.i) + "," + (p.j+move.location.j) + ")";
 		    System.err.println("Player " + group + " built building on cells" + buildingCells + " and scored " + delta + ".");
+		}
 		score.addAndGet(delta); 	
 		if (!gui) continue;
 		moves.add(move);
@@ -248,6 +313,29 @@ class Simulator {
 	return false;
     }
 
+    // build an accepted move on the land, auxiliary structures first
+    // returns the score of the building, throws if the move is invalid
+    static int build(Land land, Building request, Move move)
+    {
+	Building[] building_rotations = request.rotations();
+	// check if rotation is valid
+	if (move.rotation < 0 || move.rotation >= building_rotations.length)
+	    throw new RuntimeException("Invalid building rotation");
+	Building rotated_building = building_rotations[move.rotation];
+	for (Cell x : move.water)
+	    land.buildWater(x);
+	for (Cell x : move.park)
+	    land.buildPark(x);
+	for (Cell x : move.road)
+	    land.buildRoad(x);
+	if (!land.validateRoads())
+	    throw new RuntimeException("Roads not connected");
+	int delta = land.build(rotated_building, move.location);
+	if (delta == -1)
+	    throw new RuntimeException("Invalid building placement");
+	return delta;
+    }
+
     public static String state(String group, AtomicInteger score, long cpu, List <Move> moves, long gui_refresh, int highlight)
     {
 	StringBuffer buf = new StringBuffer();
@@ -317,7 +405,7 @@ class Simulator {
     }
 
     // scan directory (and subdirectories) for files with given extension
-    private static Set <File> directory(String path, String extension)
+    static Set <File> directory(String path, String extension)
     {
 	Set <File> files = new HashSet <File> ();
 	Set <File> prev_dirs = new HashSet <File> ();
@@ -348,8 +436,8 @@ class Simulator {
 	return last_date;
     }
     
-    // compile and load
-    private static Class <Player> load_player(String group) throws IOException, ReflectiveOperationException {
+    // compile and load (each game should use its own loader to isolate static state)
+    static Class <Player> load_player(String group, ClassLoader loader) throws IOException, ReflectiveOperationException {
 	String sep = File.separator;
 	Set <File> player_files = directory(root + sep + group, ".java");
 	File class_file = new File(root + sep + group + sep + "Player.class");
@@ -373,9 +461,6 @@ class Simulator {
 	    if (!class_file.exists())
 		throw new FileNotFoundException("Missing class file");
 	}
-	ClassLoader loader = Simulator.class.getClassLoader();
-	if (loader == null)
-	    throw new IOException("Cannot find Java class loader");
 	@SuppressWarnings("rawtypes")
 	    Class raw_class = loader.loadClass(root + "." + group + ".Player");
 	@SuppressWarnings("unchecked")
@@ -383,7 +468,7 @@ class Simulator {
 	return player_class;
     }
 
-    private static Class <Sequencer> load_sequencer(String sequencer) throws IOException, ReflectiveOperationException {
+    static Class <Sequencer> load_sequencer(String sequencer, ClassLoader loader) throws IOException, ReflectiveOperationException {
     
 	String sep = File.separator;
 	Set <File> sequencer_files = directory(root + sep + sequencer, ".java");
@@ -408,9 +493,6 @@ class Simulator {
 	    if (!class_file.exists())
 		throw new FileNotFoundException("Missing class file");
 	}
-	ClassLoader loader = Simulator.class.getClassLoader();
-	if (loader == null)
-	    throw new IOException("Cannot find Java class loader");
 	@SuppressWarnings("rawtypes")
 	    Class raw_class = loader.loadClass(root + "." + sequencer + ".Sequencer");
 	@SuppressWarnings("unchecked")
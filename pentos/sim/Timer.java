@@ -1,5 +1,6 @@
 package pentos.sim;
 
+import java.util.*;
 import java.util.concurrent.*;
 import java.lang.management.*;
 
@@ -7,15 +8,137 @@ class Timer extends Thread {
 
     private boolean start = false;
     private boolean finished = false;
+    private boolean stopped = false;
     private Callable <?> task = null;
     private Exception exception = null;
     private Object result = null;
 
     private static ThreadMXBean bean = ManagementFactory.getThreadMXBean();
 
+    // memory budgets of the games started from now on, 0 for none
+    private static volatile long max_allocated_bytes = 0;
+    private static volatile long max_retained_bytes = 0;
+    // how often the CPU time and memory are checked while the player runs
+    private static final long check_ms = 100;
+    // timers running a player, to pick the one to blame for the retained heap
+    private static final Set <Timer> running = new HashSet <Timer> ();
+    // collections done when a game was last ended for the retained heap
+    private static long blamed_collections = -1;
+
+    private final long max_allocated = max_allocated_bytes;
+    private final long max_retained = max_retained_bytes;
+    // CPU time and bytes allocated by the threads of the player, by thread id, as
+    // last seen: the threads that ended still count
+    private final Map <Long, Long> cpu = new HashMap <Long, Long> ();
+    private final Map <Long, Long> allocated = new HashMap <Long, Long> ();
+
+    // a player that timed out may still be running, it must not keep the process alive
+    // the threads the player starts join the group of the timer, their CPU time and
+    // memory count as the player's
+    public Timer()
+    {
+	super(new ThreadGroup("player"), "player");
+	setDaemon(true);
+    }
+
+    // set the memory budgets of the games to come: bytes allocated by the player
+    // in a game, and heap retained after a collection (the retained heap is that
+    // of the process, if many games run at once the one allocating most is ended)
+    public static void setMemoryBudget(long allocated_bytes, long retained_bytes)
+    {
+	max_allocated_bytes = allocated_bytes;
+	max_retained_bytes = retained_bytes;
+    }
+
+    // the threads of the player alive now
+    private Thread[] threads()
+    {
+	// no group once the timer thread ended
+	ThreadGroup group = getThreadGroup();
+	if (group == null) return new Thread [0];
+	Thread[] threads = new Thread [group.activeCount() + 8];
+	return Arrays.copyOf(threads, group.enumerate(threads));
+    }
+
+    // CPU time of the player so far in nanoseconds
     public long time()
     {
-	return isAlive() ? bean.getThreadCpuTime(getId()) : 0;
+	if (!isAlive()) return 0;
+	long total = 0;
+	synchronized (cpu) {
+	    for (Thread t : threads()) {
+		long ns = bean.getThreadCpuTime(t.getId());
+		if (ns >= 0) cpu.put(t.getId(), ns);
+	    }
+	    for (long ns : cpu.values())
+		total += ns;
+	}
+	return total;
+    }
+
+    // bytes allocated by the player so far
+    public long allocated()
+    {
+	if (!(bean instanceof com.sun.management.ThreadMXBean)) return 0;
+	com.sun.management.ThreadMXBean sun_bean = (com.sun.management.ThreadMXBean) bean;
+	if (!sun_bean.isThreadAllocatedMemorySupported()) return 0;
+	long total = 0;
+	synchronized (allocated) {
+	    for (Thread t : threads()) {
+		long bytes = sun_bean.getThreadAllocatedBytes(t.getId());
+		if (bytes >= 0) allocated.put(t.getId(), bytes);
+	    }
+	    for (long bytes : allocated.values())
+		total += bytes;
+	}
+	return total;
+    }
+
+    // heap in use after the last collections, and the number of collections
+    private static long[] retained()
+    {
+	long bytes = 0;
+	long collections = 0;
+	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+	    MemoryUsage usage = pool.getCollectionUsage();
+	    if (pool.getType() == MemoryType.HEAP && usage != null)
+		bytes += usage.getUsed();
+	}
+	for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+	    collections += Math.max(gc.getCollectionCount(), 0);
+	return new long [] {bytes, collections};
+    }
+
+    // throw if the player went over a memory budget
+    private void checkMemory() throws MemoryException
+    {
+	if (max_allocated > 0) {
+	    long bytes = allocated();
+	    if (bytes > max_allocated)
+		throw new MemoryException("Player allocated " + (bytes >> 20) + "MB, over the budget of " +
+					  (max_allocated >> 20) + "MB");
+	}
+	if (max_retained > 0) {
+	    long[] heap = retained();
+	    if (heap[0] <= max_retained) return;
+	    synchronized (running) {
+		// the heap after the same collections is not blamed twice
+		if (heap[1] == blamed_collections) return;
+		Timer blamed = this;
+		long blamed_bytes = -1;
+		for (Timer t : running) {
+		    long bytes = t.allocated();
+		    if (bytes > blamed_bytes) {
+			blamed = t;
+			blamed_bytes = bytes;
+		    }
+		}
+		if (blamed != this) return;
+		blamed_collections = heap[1];
+	    }
+	    throw new MemoryException("Heap retained " + (heap[0] >> 20) + "MB, over the budget of " +
+				      (max_retained >> 20) + "MB");
+	}
     }
 
     public <T> T call(Callable <T> task, long timeout_ms) throws Exception
@@ -23,43 +146,69 @@ class Timer extends Thread {
 	if (!isAlive()) throw new IllegalStateException();
 	if (task == null) throw new NullPointerException();
 	this.task = task;
-	synchronized (this) {
-	    start = true;
-	    notify();
-	}
-	if (timeout_ms > 0) {
+	boolean budget = max_allocated > 0 || max_retained > 0;
+	if (budget) synchronized (running) {
+		running.add(this);
+	    }
+	try {
+	    synchronized (this) {
+		start = true;
+		notify();
+	    }
 	    long epoch_ns = time();
 	    long running_ms = 0;
-	    do {
+	    for (;;) {
 		synchronized (this) {
 		    if (finished) break;
+		    // no timeout and no budget, wait(0) waits for the task to finish
+		    // the threads of the player spend CPU time faster than the clock runs
+		    long wait_ms = timeout_ms > 0 ? Math.min(timeout_ms - running_ms, check_ms) : 0;
+		    if (budget)
+			wait_ms = wait_ms > 0 ? wait_ms : check_ms;
 		    try {
-			wait(timeout_ms - running_ms);
+			wait(wait_ms);
 		    } catch (InterruptedException e) {}
+		    if (finished) break;
 		}
+		if (budget) checkMemory();
 		running_ms = (time() - epoch_ns) / 1000000;
-	    } while (running_ms < timeout_ms);
-	} else synchronized (this) {
-		while (finished == false) try {
-			wait();
-		    } catch (InterruptedException e) {}
+		if (timeout_ms > 0 && running_ms >= timeout_ms) break;
 	    }
-	if (finished == false)
-	    throw new TimeoutException();
-	finished = false;
+	    if (finished == false)
+		throw new TimeoutException();
+	    finished = false;
+	    // a short call may have gone over the budget between checks
+	    if (budget) checkMemory();
+	} catch (MemoryException e) {
+	    // the player may still be running, at least tell it to stop
+	    interrupt();
+	    throw e;
+	} finally {
+	    if (budget) synchronized (running) {
+		    running.remove(this);
+		}
+	}
 	if (exception != null) throw exception;
 	@SuppressWarnings("unchecked")
 	    T result_T = (T) result;
 	return result_T;
     }
 
+    // let the thread end once the running task (if any) returns
+    public synchronized void shutdown()
+    {
+	stopped = true;
+	notify();
+    }
+
     public void run()
     {
 	for (;;) {
 	    synchronized (this) {
-		while (start == false) try {
+		while (start == false && stopped == false) try {
 			wait();
 		    } catch (InterruptedException e) {}
+		if (start == false) return;
 	    }
 	    start = false;
 	    exception = null;
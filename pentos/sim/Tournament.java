@@ -0,0 +1,393 @@
+package pentos.sim;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.regex.*;
+
+// plays every player on every sequencer and seed, each game in its own JVM
+// (a player running out of memory or crashing the JVM takes no other game down)
+// the games run on a pool of workers, one game per worker at a time, and a free
+// worker always takes the game expected to take longest: the slow players start
+// first instead of leaving a single worker busy after the others are done
+// expected durations come from the history of previous tournaments and from the
+// games finished so far, and every game finished is added to the history
+// the results go to a journal, a restarted tournament skips the games it holds
+// with --serve the games are played by worker processes (see Worker) connecting
+// to this one, on this host or others, instead of workers of this process
+// with --pool the games are played on player JVMs started ahead (see PlayerPool)
+// a player going over the memory budgets of a game (--alloc-budget, --heap-budget,
+// see Timer) loses that game only, with score -1 and status "memory"
+class Tournament {
+
+    // the players, sequencers and seeds of pentos/RESULTS
+    private static final String[] default_players =
+	{"g1", "g2", "g3", "g4", "g5", "g6", "g8", "g9", "g10"};
+    private static final String[] default_sequencers =
+	{"g1", "g2", "g3", "g4", "g5", "g6", "g8", "g9", "g10", "random",
+	 "tailheavy", "starsandblocks", "industrialization", "misfits"};
+    private static final long[] default_seeds =
+	{869, 84, 400, 260, 800, 431, 911, 182, 264, 146};
+    // the default of Simulator, which the games of new JVMs get
+    private static final long cpu_time_ms = 300 * 1000;
+
+    static class Game {
+	final int id;
+	final String player;
+	final String sequencer;
+	final long seed;
+	final String code;
+
+	Game(int id, String player, String sequencer, long seed, String code)
+	{
+	    this.id = id;
+	    this.player = player;
+	    this.sequencer = sequencer;
+	    this.seed = seed;
+	    this.code = code;
+	}
+
+	public String toString() {return player + " " + sequencer + " " + seed;}
+    }
+
+    static class Result {
+	final int score;
+	final String status;
+	final double seconds;
+
+	Result(int score, String status, double seconds)
+	{
+	    this.score = score;
+	    this.status = status;
+	    this.seconds = seconds;
+	}
+    }
+
+    private final List <Game> all;
+    private final List <Game> pending = new ArrayList <Game> ();
+    private final Set <Game> completed = new HashSet <Game> ();
+    private int finished = 0;
+    private final long start = System.currentTimeMillis();
+    // the number of games played at the same time, for the time left
+    private volatile int workers = 1;
+
+    private final DurationHistory history;
+    private final List <String> jvm_options;
+    // megabytes allocated by the player and retained in the heap in a game, 0 for no budget
+    private long alloc_budget = 0;
+    private long heap_budget = 0;
+    private final ResultJournal journal;
+    private final File log;
+    private PrintStream trace = null;
+    // the player JVMs of --pool, null to play each game in a new JVM
+    private PlayerPool pool = null;
+
+    private Tournament(List <Game> games, DurationHistory history, List <String> jvm_options,
+		       ResultJournal journal, File log)
+    {
+	all = games;
+	pending.addAll(games);
+	this.history = history;
+	this.jvm_options = jvm_options;
+	this.journal = journal;
+	this.log = log;
+    }
+
+    Game game(int id)
+    {
+	return id >= 0 && id < all.size() ? all.get(id) : null;
+    }
+
+    void setWorkers(int workers)
+    {
+	this.workers = Math.max(workers, 1);
+    }
+
+    // the pending game expected to take longest (the first one listed on ties)
+    synchronized Game next()
+    {
+	int best = -1;
+	double best_seconds = -1.0;
+	for (int k = 0 ; k != pending.size() ; ++k) {
+	    Game g = pending.get(k);
+	    double seconds = history.expected(g.player, g.sequencer);
+	    if (seconds > best_seconds) {
+		best = k;
+		best_seconds = seconds;
+	    }
+	}
+	return best < 0 ? null : pending.remove(best);
+    }
+
+    // a game taken by next that must be played again (its worker is gone)
+    synchronized void requeue(Game g)
+    {
+	if (!completed.contains(g) && !pending.contains(g))
+	    pending.add(g);
+    }
+
+    synchronized boolean done()
+    {
+	return completed.size() == all.size();
+    }
+
+    private synchronized double expected_left()
+    {
+	double seconds = 0.0;
+	for (Game g : pending)
+	    seconds += history.expected(g.player, g.sequencer);
+	return seconds;
+    }
+
+    // record the result of a game, false if it already has one (it was played twice)
+    synchronized boolean finish(Game g, Result r, String where) throws IOException
+    {
+	if (!completed.add(g)) return false;
+	pending.remove(g);
+	journal.append(g.player, g.sequencer, g.seed, g.code, r.score, r.status, r.seconds);
+	history.record(g.player, g.sequencer, r.seconds);
+	history.save();
+	finished++;
+	System.err.println(String.format("[%d/%d] %s: %d (%s) in %.0fs%s; about %s left",
+					 finished, all.size(), g, r.score, r.status, r.seconds,
+					 where == null ? "" : " on " + where,
+					 human_time(expected_left() / workers)));
+	return true;
+    }
+
+    // output of a game played elsewhere
+    synchronized void trace(String where, Game g, String line) throws IOException
+    {
+	if (trace == null)
+	    trace = new PrintStream(new FileOutputStream(log, true), true);
+	trace.println("[" + where + "] " + g + ": " + line);
+    }
+
+    // play a game in a new JVM, the simulator writes the result to a file
+    // the output of the JVM (setup errors) is appended to the log
+    // the memory budgets are in megabytes, 0 for none
+    static Result play(String player, String sequencer, long seed, List <String> jvm_options,
+		       long alloc_budget, long heap_budget, File log)
+	throws IOException, InterruptedException
+    {
+	File result = File.createTempFile("pentos", ".result");
+	List <String> command = new ArrayList <String> ();
+	command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	command.addAll(jvm_options);
+	command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "pentos.sim.Simulator",
+				     "-g", player, "-s", sequencer, "-i", Long.toString(seed),
+				     "--tournament", result.getPath()));
+	if (alloc_budget > 0) command.addAll(Arrays.asList("--alloc-budget", Long.toString(alloc_budget)));
+	if (heap_budget > 0) command.addAll(Arrays.asList("--heap-budget", Long.toString(heap_budget)));
+	ProcessBuilder builder = new ProcessBuilder(command);
+	builder.redirectErrorStream(true);
+	builder.redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+	long epoch = System.nanoTime();
+	int exit = builder.start().waitFor();
+	double seconds = (System.nanoTime() - epoch) / 1.0e9;
+	// as in pentos/RESULTS: -2 if the player threw (or the JVM crashed)
+	int score = -2;
+	String status = "failed";
+	BufferedReader reader = new BufferedReader(new FileReader(result));
+	try {
+	    String line = reader.readLine();
+	    String[] field = line == null ? new String [0] : line.split(",");
+	    if (exit == 0 && field.length == 3) {
+		score = Integer.parseInt(field[1]);
+		status = field[2].equals("memory") ? "memory" : field[2].equals("yes") ? "timeout" : "ok";
+	    }
+	} finally {
+	    reader.close();
+	    result.delete();
+	}
+	return new Result(score, status, seconds);
+    }
+
+    // hash of the sources that decide the result of a game: those of the player,
+    // the sequencer, the simulator, and of every other package they use
+    static String code(String player, String sequencer) throws IOException
+    {
+	MessageDigest digest;
+	try {
+	    digest = MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IOException(e);
+	}
+	Set <String> dirs = new TreeSet <String> ();
+	LinkedList <String> queue = new LinkedList <String> (Arrays.asList(player, sequencer, "sim"));
+	Map <File, byte[]> sources = new TreeMap <File, byte[]> ();
+	while (!queue.isEmpty()) {
+	    String dir = queue.removeFirst();
+	    if (!dirs.add(dir)) continue;
+	    for (File file : Simulator.directory("pentos" + File.separator + dir, ".java")) {
+		byte[] source = read(file);
+		sources.put(file, source);
+		// packages named in the source (imports or qualified names)
+		Matcher m = used_package.matcher(new String(source, "UTF-8"));
+		while (m.find())
+		    if (new File("pentos", m.group(1)).isDirectory())
+			queue.add(m.group(1));
+	    }
+	}
+	for (Map.Entry <File, byte[]> e : sources.entrySet()) {
+	    digest.update(e.getKey().getPath().getBytes("UTF-8"));
+	    digest.update(e.getValue());
+	}
+	StringBuffer hex = new StringBuffer();
+	for (byte b : Arrays.copyOf(digest.digest(), 6))
+	    hex.append(String.format("%02x", b));
+	return hex.toString();
+    }
+
+    private static final Pattern used_package = Pattern.compile("\\bpentos\\.(\\w+)\\.");
+
+    private static byte[] read(File file) throws IOException
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	InputStream in = new FileInputStream(file);
+	try {
+	    byte[] buf = new byte [8192];
+	    for (int n ; (n = in.read(buf)) > 0 ;)
+		bytes.write(buf, 0, n);
+	} finally {
+	    in.close();
+	}
+	return bytes.toByteArray();
+    }
+
+    static String human_time(double seconds)
+    {
+	long s = Math.round(seconds);
+	return s >= 3600 ? (s / 3600) + "h" + (s % 3600 / 60) + "m" : s >= 60 ? (s / 60) + "m" : s + "s";
+    }
+
+    // play the games on workers threads of this process
+    private void run(final int workers) throws Exception
+    {
+	setWorkers(workers);
+	Thread[] threads = new Thread [workers];
+	final Exception[] error = new Exception [1];
+	for (int w = 0 ; w != workers ; ++w) {
+	    threads[w] = new Thread() {
+		    public void run()
+		    {
+			try {
+			    Game g;
+			    while ((g = next()) != null)
+				finish(g, pool != null ? pool.play(g.player, g.sequencer, g.seed, cpu_time_ms) :
+				       play(g.player, g.sequencer, g.seed, jvm_options, alloc_budget, heap_budget, log),
+				       null);
+			} catch (Exception e) {
+			    synchronized (error) {
+				error[0] = e;
+			    }
+			    // the other workers stop after their current game
+			    synchronized (Tournament.this) {
+				pending.clear();
+			    }
+			}
+		    }
+		};
+	    threads[w].start();
+	}
+	for (Thread t : threads)
+	    t.join();
+	if (error[0] != null) throw error[0];
+	summary();
+    }
+
+    void summary()
+    {
+	System.err.println(String.format("%d games in %s", finished,
+					 human_time((System.currentTimeMillis() - start) / 1000.0)));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+	String[] players = default_players;
+	String[] sequencers = default_sequencers;
+	long[] seeds = default_seeds;
+	int workers = Runtime.getRuntime().availableProcessors();
+	String results_path = "tournament.csv";
+	String history_path = "tournament.history";
+	String log_path = "tournament.log";
+	List <String> jvm_options = new ArrayList <String> ();
+	int port = -1;
+	long lease_ms = 60 * 1000;
+	int pool_games = 0;
+	long alloc_budget = 0;
+	long heap_budget = 0;
+	try {
+	    for (int a = 0 ; a != args.length ; ++a) {
+		String arg = args[a];
+		if (a + 1 >= args.length)
+		    throw new IllegalArgumentException("Missing value of " + arg);
+		if (arg.equals("-g") || arg.equals("--groups")) players = args[++a].split(",");
+		else if (arg.equals("-s") || arg.equals("--sequencers")) sequencers = args[++a].split(",");
+		else if (arg.equals("-i") || arg.equals("--seeds")) {
+		    String[] field = args[++a].split(",");
+		    seeds = new long [field.length];
+		    for (int k = 0 ; k != field.length ; ++k)
+			seeds[k] = Long.parseLong(field[k]);
+		}
+		else if (arg.equals("-t") || arg.equals("--workers")) workers = Integer.parseInt(args[++a]);
+		else if (arg.equals("-o") || arg.equals("--results")) results_path = args[++a];
+		else if (arg.equals("--history")) history_path = args[++a];
+		else if (arg.equals("--log")) log_path = args[++a];
+		else if (arg.equals("-J")) jvm_options.add(args[++a]);
+		else if (arg.equals("--serve")) port = Integer.parseInt(args[++a]);
+		else if (arg.equals("--lease")) lease_ms = Long.parseLong(args[++a]) * 1000;
+		else if (arg.equals("--pool")) pool_games = Integer.parseInt(args[++a]);
+		else if (arg.equals("--alloc-budget")) alloc_budget = Long.parseLong(args[++a]);
+		else if (arg.equals("--heap-budget")) heap_budget = Long.parseLong(args[++a]);
+		else throw new IllegalArgumentException("Unknown argument: " + arg);
+	    }
+	    if (workers < 1 || lease_ms <= 0 || pool_games < 0)
+		throw new IllegalArgumentException("Invalid number of workers, lease or pool games");
+	} catch (Exception e) {
+	    System.err.println("Invalid arguments: " + e.getMessage());
+	    System.err.println("Usage: java pentos.sim.Tournament [-g <group,...>] [-s <sequencer,...>]"
+			       + " [-i <seed,...>] [-t <workers>] [-o <results file>] [--history <file>]"
+			       + " [--log <file>] [-J <JVM option>]... [--pool <games per JVM>]"
+			       + " [--alloc-budget <MB>] [--heap-budget <MB>]"
+			       + " [--serve <port> [--lease <seconds>]]");
+	    System.exit(1);
+	}
+	// listed in the order of pentos/SCRIPTS/run_tournament.py
+	ResultJournal journal = new ResultJournal(results_path);
+	List <Game> games = new ArrayList <Game> ();
+	int done = 0;
+	for (String sequencer : sequencers)
+	    for (String player : players) {
+		String code = code(player, sequencer);
+		for (long seed : seeds)
+		    if (journal.done(player, sequencer, seed, code)) done++;
+		    else games.add(new Game(games.size(), player, sequencer, seed, code));
+	    }
+	if (done > 0)
+	    System.err.println(done + " games already in " + results_path + ", " + games.size() + " left");
+	Tournament tournament = new Tournament(games, new DurationHistory(history_path), jvm_options,
+					       journal, new File(log_path));
+	tournament.alloc_budget = alloc_budget;
+	tournament.heap_budget = heap_budget;
+	if (port >= 0)
+	    // the workers connecting to the coordinator play the games
+	    new Coordinator(tournament, port, lease_ms, alloc_budget, heap_budget).run();
+	else {
+	    // compile everything once, the games would all compile at the same time
+	    for (String player : players)
+		Simulator.load_player(player, new GameClassLoader("pentos", Simulator.class.getClassLoader()));
+	    for (String sequencer : sequencers)
+		Simulator.load_sequencer(sequencer, new GameClassLoader("pentos", Simulator.class.getClassLoader()));
+	    if (pool_games > 0)
+		tournament.pool = new PlayerPool(workers, pool_games, jvm_options, alloc_budget, heap_budget,
+						 new File(log_path));
+	    try {
+		tournament.run(workers);
+	    } finally {
+		if (tournament.pool != null) tournament.pool.close();
+	    }
+	}
+	journal.close();
+    }
+}
@@ -0,0 +1,198 @@
+package pentos.sim;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// precomputed orders in which to visit the cells of a rectangle, shared by all players
+// an order is a packed int[] (i << 16 | j) built once per (rows, columns, strategy,
+// direction) and read by index, so a scan allocates nothing, may stop at any point
+// and splits into stripes of consecutive cells for parallel scans
+public final class TraversalOrder {
+
+    public enum Strategy {
+	// rows top to bottom, each left to right
+	ROW_MAJOR,
+	// rows bottom to top, each right to left
+	REVERSE,
+	// rings from the outer one (outwards: from the inner one)
+	SPIRAL,
+	// anti-diagonals from the top left corner (outwards: from the bottom right one)
+	CORNER,
+	// row-major (inwards: reversed)
+	BLOCK,
+	// by manhattan distance from an anchor then row-major (inwards: farthest first)
+	DISTANCE
+    }
+
+    private static final Map<Long, TraversalOrder> orders =
+	new ConcurrentHashMap<Long, TraversalOrder>();
+
+    private final int[] order;
+
+    private TraversalOrder(int[] order)
+    {
+	this.order = order;
+    }
+
+    // the order of a strategy over rows x columns cells
+    // for ROW_MAJOR, REVERSE and DISTANCE inwards is the reversed order
+    public static TraversalOrder of(Strategy strategy, int rows, int columns, boolean outwards)
+    {
+	if (strategy == Strategy.DISTANCE)
+	    throw new IllegalArgumentException("Distance order needs an anchor");
+	return get(strategy, rows, columns, outwards, 0, 0);
+    }
+
+    public static TraversalOrder of(Strategy strategy, int side, boolean outwards)
+    {
+	return of(strategy, side, side, outwards);
+    }
+
+    // the cells of rows x columns by distance from the anchor (nearest first if outwards)
+    public static TraversalOrder distance(int rows, int columns, Cell anchor, boolean outwards)
+    {
+	return get(Strategy.DISTANCE, rows, columns, outwards, anchor.i, anchor.j);
+    }
+
+    private static TraversalOrder get(Strategy strategy, int rows, int columns, boolean outwards,
+				      int anchor_i, int anchor_j)
+    {
+	if (rows <= 0 || columns <= 0 || rows > 0xFFF || columns > 0xFFF)
+	    throw new IllegalArgumentException("Invalid dimensions: " + rows + "x" + columns);
+	long key = ((long) rows << 52) | ((long) columns << 40) |
+	    ((long) (anchor_i & 0xFFF) << 28) | ((long) (anchor_j & 0xFFF) << 16) |
+	    (strategy.ordinal() << 1) | (outwards ? 1 : 0);
+	TraversalOrder t = orders.get(key);
+	if (t == null) {
+	    t = new TraversalOrder(build(strategy, rows, columns, outwards, anchor_i, anchor_j));
+	    TraversalOrder old = orders.putIfAbsent(key, t);
+	    if (old != null) t = old;
+	}
+	return t;
+    }
+
+    // number of cells visited (spirals visit some cells twice)
+    public int size() {return order.length;}
+
+    // row, column and packed form of the k-th cell
+    public int i(int k) {return order[k] >>> 16;}
+    public int j(int k) {return order[k] & 0xFFFF;}
+    public int packed(int k) {return order[k];}
+
+    // the k-th cell of stripe s out of n stripes of consecutive cells is at
+    // index begin(s, n) + k, up to end(s, n) exclusive
+    public int begin(int stripe, int stripes)
+    {
+	if (stripes <= 0 || stripe < 0 || stripe >= stripes)
+	    throw new IllegalArgumentException("Invalid stripe: " + stripe + " of " + stripes);
+	return (int) ((long) order.length * stripe / stripes);
+    }
+
+    public int end(int stripe, int stripes)
+    {
+	begin(stripe, stripes);
+	return (int) ((long) order.length * (stripe + 1) / stripes);
+    }
+
+    private static int pack(int i, int j) {return (i << 16) | j;}
+
+    private static int[] build(Strategy strategy, int m, int n, boolean outwards,
+			       int anchor_i, int anchor_j)
+    {
+	int[] order;
+	switch (strategy) {
+	case SPIRAL:
+	    return spiral(m, n, outwards);
+	case CORNER:
+	    return corner(m, n, outwards);
+	case BLOCK:
+	    return rows(m, n, !outwards);
+	case REVERSE:
+	    order = rows(m, n, true);
+	    break;
+	case DISTANCE:
+	    order = distance(m, n, anchor_i, anchor_j);
+	    break;
+	default:
+	    order = rows(m, n, false);
+	}
+	if (!outwards)
+	    for (int a = 0, b = order.length - 1 ; a < b ; ++a, --b) {
+		int t = order[a];
+		order[a] = order[b];
+		order[b] = t;
+	    }
+	return order;
+    }
+
+    private static int[] rows(int m, int n, boolean reverse)
+    {
+	int[] order = new int [m * n];
+	int k = 0;
+	for (int i = 0 ; i != m ; ++i)
+	    for (int j = 0 ; j != n ; ++j)
+		order[k++] = reverse ? pack(m - 1 - i, n - 1 - j) : pack(i, j);
+	return order;
+    }
+
+    private static int[] distance(int m, int n, int anchor_i, int anchor_j)
+    {
+	// counting sort on the distance keeps row-major order within a distance
+	int max = Math.max(anchor_i, m - 1 - anchor_i) + Math.max(anchor_j, n - 1 - anchor_j);
+	int[] count = new int [max + 2];
+	for (int i = 0 ; i != m ; ++i)
+	    for (int j = 0 ; j != n ; ++j)
+		count[Math.abs(i - anchor_i) + Math.abs(j - anchor_j) + 1]++;
+	for (int d = 1 ; d != count.length ; ++d)
+	    count[d] += count[d-1];
+	int[] order = new int [m * n];
+	for (int i = 0 ; i != m ; ++i)
+	    for (int j = 0 ; j != n ; ++j)
+		order[count[Math.abs(i - anchor_i) + Math.abs(j - anchor_j)]++] = pack(i, j);
+	return order;
+    }
+
+    // rings of the rectangle, each starting half way down its left side
+    private static int[] spiral(int m, int n, boolean outwards)
+    {
+	int loops = (Math.min(m, n) + 1) / 2;
+	IntList l = new IntList();
+	for (int r = 0 ; r != loops ; ++r) {
+	    int loop = outwards ? loops - 1 - r : r;
+	    int i = m / 2;
+	    int j = loop;
+	    for (; i > loop ; --i) l.add(pack(i, j));
+	    for (; j < (n-1) - loop ; ++j) l.add(pack(i, j));
+	    for (; i < (m-1) - loop ; ++i) l.add(pack(i, j));
+	    for (; j > loop ; --j) l.add(pack(i, j));
+	    for (; i > (m/2) - 1 ; --i) l.add(pack(i, j));
+	}
+	return l.toArray();
+    }
+
+    // anti-diagonals of the largest square in the top left corner
+    private static int[] corner(int m, int n, boolean outwards)
+    {
+	int loops = Math.min(m, n) - 1;
+	IntList l = new IntList();
+	for (int loop = 0 ; loop <= 2 * loops ; ++loop)
+	    for (int j = Math.max(0, loop - loops) ; j <= Math.min(loop, loops) ; ++j) {
+		int i = loop - j;
+		l.add(outwards ? pack(loops - i, loops - j) : pack(i, j));
+	    }
+	return l.toArray();
+    }
+
+    private static class IntList {
+	int[] a = new int [64];
+	int n = 0;
+
+	void add(int x)
+	{
+	    if (n == a.length) a = Arrays.copyOf(a, n * 2);
+	    a[n++] = x;
+	}
+
+	int[] toArray() {return Arrays.copyOf(a, n);}
+    }
+}
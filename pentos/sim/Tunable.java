@@ -0,0 +1,13 @@
+package pentos.sim;
+
+// a player whose tunables can be set for a game instead of edited in its source
+// the simulator calls tune after constructing the player and before init
+// (each game loads the player classes again, so static tunables are per game too)
+public interface Tunable {
+
+    // the tunables with their defaults and ranges
+    public ParameterSpace space();
+
+    // play with these values (one for every parameter of the space)
+    public void tune(Parameters parameters);
+}
@@ -0,0 +1,213 @@
+package pentos.sim;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// searches the tunables of a player by successive halving
+// a number of configurations (the defaults and random points of the space
+// the player declares) play the same seeds of every sequencer, the best
+// fraction is kept and plays more seeds, until a single one is left
+// all configurations of a rung play the very same request streams, so the
+// comparisons are paired and need far fewer games than independent runs
+// the games run in this process on all cores, each with its own class loader
+class Tuner {
+
+    private static final String root = "pentos";
+
+    private final String group;
+    private final String[] sequencers;
+    private final Map <String, Class <Sequencer>> s_classes = new HashMap <String, Class <Sequencer>> ();
+    private final long first_seed;
+    private final long cpu_time_ms;
+    private final ExecutorService pool;
+
+    private final AtomicInteger timeouts = new AtomicInteger(0);
+    private final AtomicInteger failures = new AtomicInteger(0);
+
+    // a configuration and the scores of the games it played (by game index)
+    private static class Candidate {
+	final int id;
+	final Parameters parameters;
+	final Map <Integer, Integer> scores = new HashMap <Integer, Integer> ();
+
+	Candidate(int id, Parameters parameters)
+	{
+	    this.id = id;
+	    this.parameters = parameters;
+	}
+
+	double mean()
+	{
+	    double sum = 0.0;
+	    for (int s : scores.values()) sum += s;
+	    return scores.isEmpty() ? 0.0 : sum / scores.size();
+	}
+    }
+
+    private Tuner(String group, String[] sequencers, long first_seed, long cpu_time_ms, int threads)
+	throws IOException, ReflectiveOperationException
+    {
+	this.group = group;
+	this.sequencers = sequencers;
+	this.first_seed = first_seed;
+	this.cpu_time_ms = cpu_time_ms;
+	// sequencers may outlive the games in the sequence cache
+	for (String sequencer : sequencers)
+	    s_classes.put(sequencer, Simulator.load_sequencer
+			  (sequencer, new GameClassLoader(root, Simulator.class.getClassLoader())));
+	pool = Executors.newFixedThreadPool(threads);
+    }
+
+    // the space of the player (compiling it if needed)
+    private ParameterSpace space() throws Exception
+    {
+	GameClassLoader loader = new GameClassLoader(root, Simulator.class.getClassLoader());
+	try {
+	    Player player = Simulator.load_player(group, loader).getDeclaredConstructor().newInstance();
+	    if (!(player instanceof Tunable))
+		throw new IllegalArgumentException("Player " + group + " has no tunables");
+	    return ((Tunable) player).space();
+	} finally {
+	    loader.close();
+	}
+    }
+
+    // game k is seed first_seed + k / sequencers of sequencer k % sequencers
+    private int game(Parameters parameters, int k) throws Exception
+    {
+	String sequencer = sequencers[k % sequencers.length];
+	long seed = first_seed + k / sequencers.length;
+	try {
+	    return Simulator.play(group, sequencer, s_classes.get(sequencer), seed,
+				  cpu_time_ms, parameters, timeouts);
+	} catch (Exception e) {
+	    // a configuration that breaks the player scores nothing
+	    if (failures.incrementAndGet() == 1)
+		System.err.println("Game failed (" + sequencer + ", seed " + seed + ", " +
+				   parameters + "): " + e);
+	    return 0;
+	}
+    }
+
+    // play the games 0 .. games-1 each candidate has not played yet
+    private void evaluate(List <Candidate> candidates, int games) throws Exception
+    {
+	List <Future <?>> futures = new ArrayList <Future <?>> ();
+	for (final Candidate c : candidates)
+	    for (int k = 0 ; k != games ; ++k) {
+		if (c.scores.containsKey(k)) continue;
+		final int game = k;
+		futures.add(pool.submit(new Callable <Void> () {
+			public Void call() throws Exception
+			{
+			    int score = game(c.parameters, game);
+			    synchronized (c) {
+				c.scores.put(game, score);
+			    }
+			    return null;
+			}
+		    }));
+	    }
+	for (Future <?> f : futures)
+	    f.get();
+    }
+
+    private Candidate search(ParameterSpace space, int configurations, int seeds, int eta, Random gen)
+	throws Exception
+    {
+	List <Candidate> candidates = new ArrayList <Candidate> ();
+	candidates.add(new Candidate(0, space.defaults()));
+	while (candidates.size() < configurations)
+	    candidates.add(new Candidate(candidates.size(), space.sample(gen)));
+	Candidate defaults = candidates.get(0);
+	for (int rung = 0 ;; ++rung) {
+	    int games = seeds * sequencers.length;
+	    long start = System.currentTimeMillis();
+	    evaluate(candidates, games);
+	    Collections.sort(candidates, new Comparator <Candidate> () {
+		    public int compare(Candidate a, Candidate b)
+		    {
+			int c = Double.compare(b.mean(), a.mean());
+			return c != 0 ? c : Integer.compare(a.id, b.id);
+		    }
+		});
+	    System.err.println("Rung " + rung + ": " + candidates.size() + " configurations x " +
+			       games + " games in " + (System.currentTimeMillis() - start) / 1000 + "s");
+	    for (Candidate c : candidates)
+		System.err.println(String.format("  #%-4d %8.1f  %s", c.id, c.mean(),
+						 c == defaults ? "(defaults)" : c.parameters.toString()));
+	    if (candidates.size() == 1) break;
+	    candidates = new ArrayList <Candidate> (candidates.subList(0, (candidates.size() + eta - 1) / eta));
+	    seeds *= eta;
+	}
+	if (!defaults.scores.isEmpty() && candidates.get(0) != defaults)
+	    System.err.println(String.format("Defaults scored %.1f over the first %d games",
+					     defaults.mean(), defaults.scores.size()));
+	return candidates.get(0);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+	String group = null;
+	String[] sequencers = new String [] {"random"};
+	int configurations = 16;
+	int seeds = 2;
+	int eta = 2;
+	int threads = Runtime.getRuntime().availableProcessors();
+	long first_seed = 1;
+	long random_seed = 0;
+	long cpu_time_ms = 300 * 1000;
+	String output = null;
+	try {
+	    for (int a = 0 ; a != args.length ; ++a) {
+		String arg = args[a];
+		if (a + 1 >= args.length)
+		    throw new IllegalArgumentException("Missing value of " + arg);
+		if (arg.equals("-g") || arg.equals("--group")) group = args[++a];
+		else if (arg.equals("-s") || arg.equals("--sequencers")) sequencers = args[++a].split(",");
+		else if (arg.equals("-n") || arg.equals("--configurations")) configurations = Integer.parseInt(args[++a]);
+		else if (arg.equals("-r") || arg.equals("--seeds")) seeds = Integer.parseInt(args[++a]);
+		else if (arg.equals("--eta")) eta = Integer.parseInt(args[++a]);
+		else if (arg.equals("-t") || arg.equals("--threads")) threads = Integer.parseInt(args[++a]);
+		else if (arg.equals("-i") || arg.equals("--first-seed")) first_seed = Long.parseLong(args[++a]);
+		else if (arg.equals("--random-seed")) random_seed = Long.parseLong(args[++a]);
+		else if (arg.equals("--cpu-time")) cpu_time_ms = Long.parseLong(args[++a]);
+		else if (arg.equals("-o") || arg.equals("--output")) output = args[++a];
+		else throw new IllegalArgumentException("Unknown argument: " + arg);
+	    }
+	    if (group == null)
+		throw new IllegalArgumentException("Missing group name");
+	    if (configurations < 1 || seeds < 1 || eta < 2 || threads < 1)
+		throw new IllegalArgumentException("Invalid search settings");
+	} catch (Exception e) {
+	    System.err.println("Invalid arguments: " + e.getMessage());
+	    System.err.println("Usage: java pentos.sim.Tuner -g <group> [-s <sequencer,...>] [-n <configurations>]"
+			       + " [-r <seeds>] [--eta <keep 1 in>] [-t <threads>] [-i <first seed>]"
+			       + " [--random-seed <seed>] [--cpu-time <ms>] [-o <parameters file>]");
+	    System.exit(1);
+	}
+	Tuner tuner = new Tuner(group, sequencers, first_seed, cpu_time_ms, threads);
+	ParameterSpace space = tuner.space();
+	System.err.println("Tuning " + space.size() + " parameters of " + group + " on " +
+			   String.join(",", sequencers) + " with " + threads + " threads");
+	Candidate best = tuner.search(space, configurations, seeds, eta, new Random(random_seed));
+	tuner.pool.shutdown();
+	System.err.println(String.format("Best: %.1f over %d games", best.mean(), best.scores.size()));
+	if (tuner.timeouts.get() + tuner.failures.get() > 0)
+	    System.err.println(tuner.timeouts.get() + " games timed out, " + tuner.failures.get() + " failed");
+	if (output == null)
+	    best.parameters.write(System.err);
+	else {
+	    PrintStream file = new PrintStream(new FileOutputStream(output));
+	    file.println("# " + group + " tuned on " + String.join(",", sequencers) + ", " +
+			 best.scores.size() + " games from seed " + first_seed);
+	    best.parameters.write(file);
+	    file.close();
+	    System.err.println("Parameters written to " + output);
+	}
+	// players that timed out may still be running
+	System.exit(0);
+    }
+}
@@ -0,0 +1,183 @@
+package pentos.sim;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.util.*;
+
+// plays the games a tournament coordinator (Tournament --serve) hands out
+// each of the slots opens its own connection and plays one game at a time in a
+// new JVM, as a local tournament does, renewing the lease of the game while it
+// runs and sending back its output and result (see Coordinator for the protocol)
+// the worker needs the same sources as the coordinator: a slot given a game whose
+// code hash differs here hands it back to be played elsewhere and stops
+class Worker {
+
+    // lines of output of a game sent back at most
+    private static final int max_trace = 50;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final List <String> jvm_options;
+
+    private Worker(String host, int port, String name, List <String> jvm_options)
+    {
+	this.host = host;
+	this.port = port;
+	this.name = name;
+	this.jvm_options = jvm_options;
+    }
+
+    private static void send(PrintWriter out, String line)
+    {
+	synchronized (out) {
+	    out.println(line);
+	    out.flush();
+	}
+    }
+
+    // play games on one connection until the coordinator is done or gone
+    private void slot(String slot_name) throws Exception
+    {
+	Socket socket = new Socket(host, port);
+	try {
+	    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+	    final PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+	    send(out, "HELLO " + slot_name);
+	    for (;;) {
+		send(out, "NEXT");
+		String line = in.readLine();
+		if (line == null || line.equals("DONE")) return;
+		String[] field = line.split(" ");
+		if (field[0].equals("WAIT")) {
+		    Thread.sleep(Long.parseLong(field[1]));
+		    continue;
+		}
+		if (!field[0].equals("JOB") || field.length != 9)
+		    throw new IOException("Invalid message: " + line);
+		final String id = field[1];
+		String player = field[2];
+		String sequencer = field[3];
+		long seed = Long.parseLong(field[4]);
+		long lease_ms = Long.parseLong(field[6]);
+		// the memory budgets of the tournament
+		long alloc_budget = Long.parseLong(field[7]);
+		long heap_budget = Long.parseLong(field[8]);
+		String code = Tournament.code(player, sequencer);
+		if (!code.equals(field[5])) {
+		    System.err.println("Slot " + slot_name + " has code " + code + " for " + player + " " +
+				       sequencer + " instead of " + field[5] + ", stopping");
+		    send(out, "REJECT " + id);
+		    return;
+		}
+		// renew the lease a few times per lease period while the game runs
+		java.util.Timer heartbeat = new java.util.Timer(true);
+		heartbeat.schedule(new TimerTask() {
+			public void run()
+			{
+			    send(out, "ALIVE " + id);
+			}
+		    }, lease_ms / 4, lease_ms / 4);
+		File log = File.createTempFile("pentos", ".log");
+		Tournament.Result r;
+		try {
+		    compile(player, sequencer);
+		    r = Tournament.play(player, sequencer, seed, jvm_options, alloc_budget, heap_budget, log);
+		} catch (Exception e) {
+		    r = new Tournament.Result(-2, "failed", 0.0);
+		    send(out, "TRACE " + id + " " + e);
+		} finally {
+		    heartbeat.cancel();
+		}
+		for (String trace : tail(log))
+		    send(out, "TRACE " + id + " " + trace);
+		log.delete();
+		send(out, "RESULT " + id + " " + r.score + " " + r.status + " " +
+		     String.format(Locale.ROOT, "%.1f", r.seconds));
+	    }
+	} finally {
+	    socket.close();
+	}
+    }
+
+    // compile before the game, once for all slots
+    private static synchronized void compile(String player, String sequencer) throws Exception
+    {
+	Simulator.load_player(player, new GameClassLoader("pentos", Simulator.class.getClassLoader()));
+	Simulator.load_sequencer(sequencer, new GameClassLoader("pentos", Simulator.class.getClassLoader()));
+    }
+
+    private static List <String> tail(File log) throws IOException
+    {
+	LinkedList <String> lines = new LinkedList <String> ();
+	BufferedReader reader = new BufferedReader(new FileReader(log));
+	try {
+	    String line;
+	    while ((line = reader.readLine()) != null) {
+		lines.add(line);
+		if (lines.size() > max_trace) lines.removeFirst();
+	    }
+	} finally {
+	    reader.close();
+	}
+	return lines;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+	String host = "localhost";
+	int port = -1;
+	int slots = Runtime.getRuntime().availableProcessors();
+	// pid@host
+	String name = ManagementFactory.getRuntimeMXBean().getName();
+	List <String> jvm_options = new ArrayList <String> ();
+	try {
+	    for (int a = 0 ; a != args.length ; ++a) {
+		String arg = args[a];
+		if (a + 1 >= args.length)
+		    throw new IllegalArgumentException("Missing value of " + arg);
+		if (arg.equals("-c") || arg.equals("--coordinator")) {
+		    String address = args[++a];
+		    int colon = address.lastIndexOf(':');
+		    if (colon >= 0) {
+			host = address.substring(0, colon);
+			address = address.substring(colon + 1);
+		    }
+		    port = Integer.parseInt(address);
+		}
+		else if (arg.equals("-t") || arg.equals("--slots")) slots = Integer.parseInt(args[++a]);
+		else if (arg.equals("--name")) name = args[++a];
+		else if (arg.equals("-J")) jvm_options.add(args[++a]);
+		else throw new IllegalArgumentException("Unknown argument: " + arg);
+	    }
+	    if (port < 0)
+		throw new IllegalArgumentException("Missing coordinator port");
+	    if (slots < 1)
+		throw new IllegalArgumentException("Invalid number of slots");
+	} catch (Exception e) {
+	    System.err.println("Invalid arguments: " + e.getMessage());
+	    System.err.println("Usage: java pentos.sim.Worker -c [<host>:]<port> [-t <slots>] [--name <name>]"
+			       + " [-J <JVM option>]...");
+	    System.exit(1);
+	}
+	final Worker worker = new Worker(host, port, name, jvm_options);
+	Thread[] threads = new Thread [slots];
+	for (int s = 0 ; s != slots ; ++s) {
+	    final String slot_name = name.replace(' ', '_') + "/" + s;
+	    threads[s] = new Thread() {
+		    public void run()
+		    {
+			try {
+			    worker.slot(slot_name);
+			} catch (Exception e) {
+			    System.err.println("Slot " + slot_name + " stopped: " + e);
+			}
+		    }
+		};
+	    threads[s].start();
+	}
+	for (Thread t : threads)
+	    t.join();
+    }
+}